@@ -0,0 +1,21 @@
+package aa.aggregators;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * A ClientHttpRequestFactory whose requests can be aborted from another thread. Aborting closes the connection, so a
+ * blocked execute fails right away. Used to stop the losing or abandoned attempt of a hedged request.
+ */
+public interface AbortableClientHttpRequestFactory extends ClientHttpRequestFactory {
+
+    /**
+     * @param abortHandle receives the action that aborts the request, before the request is returned
+     */
+    ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod, Consumer<Runnable> abortHandle) throws IOException;
+}
@@ -0,0 +1,55 @@
+package aa.aggregators;
+
+import aa.resilience.Cancellation;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * HttpComponentsClientHttpRequestFactory whose requests are aborted with {@link HttpUriRequest#abort()}. Every request
+ * is also aborted when the call to the authority it is made for is cancelled, see {@link Cancellation}.
+ */
+public class AbortableHttpComponentsClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory
+    implements AbortableClientHttpRequestFactory {
+
+    //the request that is created by the current thread in createRequest
+    private final ThreadLocal<HttpUriRequest> creating = new ThreadLocal<>();
+
+    public AbortableHttpComponentsClientHttpRequestFactory() {
+        super();
+    }
+
+    public AbortableHttpComponentsClientHttpRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    @Override
+    protected void postProcessHttpRequest(HttpUriRequest request) {
+        creating.set(request);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return createRequest(uri, httpMethod, abort -> {
+        });
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod, Consumer<Runnable> abortHandle) throws IOException {
+        try {
+            ClientHttpRequest request = super.createRequest(uri, httpMethod);
+            HttpUriRequest httpUriRequest = creating.get();
+            abortHandle.accept(httpUriRequest::abort);
+            Cancellation.onCancel(httpUriRequest::abort);
+            return request;
+        } finally {
+            creating.remove();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package aa.aggregators;
+
+import aa.resilience.Cancellation;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.util.function.Consumer;
+
+/**
+ * SimpleClientHttpRequestFactory whose requests are aborted by disconnecting their HttpURLConnection. Every request is
+ * also aborted when the call to the authority it is made for is cancelled, see {@link Cancellation}.
+ */
+public class AbortableSimpleClientHttpRequestFactory extends SimpleClientHttpRequestFactory
+    implements AbortableClientHttpRequestFactory {
+
+    //the connection that is opened by the current thread in createRequest
+    private final ThreadLocal<HttpURLConnection> opening = new ThreadLocal<>();
+
+    @Override
+    protected HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException {
+        HttpURLConnection connection = super.openConnection(url, proxy);
+        opening.set(connection);
+        return connection;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return createRequest(uri, httpMethod, abort -> {
+        });
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod, Consumer<Runnable> abortHandle) throws IOException {
+        try {
+            ClientHttpRequest request = super.createRequest(uri, httpMethod);
+            HttpURLConnection connection = opening.get();
+            abortHandle.accept(connection::disconnect);
+            Cancellation.onCancel(connection::disconnect);
+            return request;
+        } finally {
+            opening.remove();
+        }
+    }
+}
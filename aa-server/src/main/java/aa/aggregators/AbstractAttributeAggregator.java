@@ -1,8 +1,12 @@
 package aa.aggregators;
 
+import aa.cache.CacheKeyBuilder;
 import aa.model.AttributeAuthorityConfiguration;
 import aa.model.RequiredInputAttribute;
 import aa.model.UserAttribute;
+import aa.resilience.AdaptiveTimeout;
+import aa.resilience.HedgeBudget;
+import aa.resilience.LatencyHistogram;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.config.RequestConfig;
@@ -23,7 +27,6 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -31,34 +34,77 @@ import static java.lang.String.format;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
 public abstract class AbstractAttributeAggregator implements AttributeAggregator {
 
     protected final Logger LOG = LoggerFactory.getLogger(getClass());
 
+    private static final int HEDGE_BURST = 10;
+
     private final AttributeAuthorityConfiguration attributeAuthorityConfiguration;
 
     private final List<String> attributeKeysRequired;
 
+    private final AdaptiveTimeout adaptiveTimeout;
+
     private RestTemplate restTemplate;
 
+    //built once, shared by all RestTemplates of the authority
+    private ClientHttpRequestFactory requestFactory;
+
+    //only assigned by hedging(...) when the request factory is built, null when the authority does not hedge
+    private HedgingClientHttpRequestFactory hedgingRequestFactory;
+
     public AbstractAttributeAggregator(AttributeAuthorityConfiguration attributeAuthorityConfiguration) {
         this.attributeAuthorityConfiguration = attributeAuthorityConfiguration;
         this.attributeKeysRequired = attributeAuthorityConfiguration.getRequiredInputAttributes().stream().map
                 (RequiredInputAttribute::getName).collect(toList());
+        this.adaptiveTimeout = attributeAuthorityConfiguration.getAdaptiveTimeOutPercentile() > 0 &&
+                attributeAuthorityConfiguration.getTimeOut() > 0 ? new AdaptiveTimeout(
+                new LatencyHistogram(TimeUnit.MINUTES.toMillis(5), 10),
+                attributeAuthorityConfiguration.getAdaptiveTimeOutPercentile(),
+                attributeAuthorityConfiguration.getAdaptiveTimeOutMarginMilliseconds(),
+                attributeAuthorityConfiguration.getAdaptiveTimeOutFloorMilliseconds(),
+                attributeAuthorityConfiguration.getTimeOut(),
+                100) : null;
         if (StringUtils.hasText(attributeAuthorityConfiguration.getEndpoint())) {
             this.restTemplate = initializeRestTemplate(attributeAuthorityConfiguration);
         }
     }
 
     protected RestTemplate initializeRestTemplate(AttributeAuthorityConfiguration attributeAuthorityConfiguration) {
-        try {
-            return new RestTemplate(getRequestFactory(attributeAuthorityConfiguration));
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
+        return configure(new RestTemplate());
+    }
+
+    /**
+     * Sets the request factory of the authority - with its timeouts, connection pool and hedging - and the latency
+     * interceptor of the adaptive timeout on a RestTemplate, e.g. one that a subclass needs for authentication.
+     */
+    protected <T extends RestTemplate> T configure(T restTemplate) {
+        restTemplate.setRequestFactory(requestFactory());
+        if (adaptiveTimeout != null) {
+            restTemplate.getInterceptors().add((request, body, execution) -> {
+                long start = System.currentTimeMillis();
+                try {
+                    return execution.execute(request, body);
+                } finally {
+                    adaptiveTimeout.record(System.currentTimeMillis() - start);
+                }
+            });
+        }
+        return restTemplate;
+    }
+
+    private synchronized ClientHttpRequestFactory requestFactory() {
+        if (requestFactory == null) {
+            try {
+                requestFactory = getRequestFactory(attributeAuthorityConfiguration);
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
         }
+        return requestFactory;
     }
 
     @Override
@@ -68,17 +114,8 @@ public abstract class AbstractAttributeAggregator implements AttributeAggregator
 
     @Override
     public Optional<String> cacheKey(List<UserAttribute> input) {
-        List<String> requiredKeys = attributeKeysRequired();
-        Set<String> values = input.stream()
-                .filter(userAttribute -> requiredKeys.contains(userAttribute.getName()))
-                .map(UserAttribute::getValues)
-                .flatMap(List::stream)
-                .collect(toSet());
-        //ensure we don't hit the cache accidentally
-        return values.isEmpty() ?
-                Optional.empty() :
-                Optional.of(getAttributeAuthorityId() + "-" + String.join(",", values));
-
+        return CacheKeyBuilder.cacheKey(getAttributeAuthorityId(), attributeKeysRequired(), input,
+                attributeAuthorityConfiguration.isCaseInsensitiveInput());
     }
 
     @Override
@@ -94,6 +131,11 @@ public abstract class AbstractAttributeAggregator implements AttributeAggregator
         return restTemplate;
     }
 
+    @Override
+    public int getEffectiveTimeOut() {
+        return adaptiveTimeout != null ? adaptiveTimeout.currentTimeoutMillis() : attributeAuthorityConfiguration.getTimeOut();
+    }
+
     protected URI endpoint() {
         return endpoint("");
     }
@@ -136,13 +178,44 @@ public abstract class AbstractAttributeAggregator implements AttributeAggregator
                     (attributeAuthorityConfiguration.getUser(), attributeAuthorityConfiguration.getPassword()));
             httpClientBuilder.setDefaultCredentialsProvider(basicCredentialsProvider);
         }
+        int maxConcurrentCalls = attributeAuthorityConfiguration.getMaxConcurrentCalls();
+        if (maxConcurrentCalls > 0) {
+            //align the connection pool with the bulkhead, the default of two connections per route is too strict
+            httpClientBuilder.setMaxConnPerRoute(maxConcurrentCalls).setMaxConnTotal(maxConcurrentCalls);
+        }
         int timeOut = attributeAuthorityConfiguration.getTimeOut();
-        httpClientBuilder.setDefaultRequestConfig(RequestConfig.custom().setConnectionRequestTimeout(timeOut)
-                .setConnectTimeout(timeOut).setSocketTimeout(timeOut).build());
+        RequestConfig requestConfig = RequestConfig.custom().setConnectionRequestTimeout(timeOut)
+                .setConnectTimeout(timeOut).setSocketTimeout(timeOut).build();
+        httpClientBuilder.setDefaultRequestConfig(requestConfig);
 
         CloseableHttpClient httpClient = httpClientBuilder.build();
-        return new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(httpClient,
-                attributeAuthorityConfiguration.getEndpoint());
+        return hedging(adaptiveTimeout != null ?
+                new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(httpClient,
+                        attributeAuthorityConfiguration.getEndpoint(), requestConfig, adaptiveTimeout) :
+                new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(httpClient,
+                        attributeAuthorityConfiguration.getEndpoint()));
+    }
+
+    /**
+     * Wraps the requestFactory in a HedgingClientHttpRequestFactory if the authority is configured for hedging.
+     */
+    private ClientHttpRequestFactory hedging(AbortableClientHttpRequestFactory requestFactory) {
+        int hedgeAfter = attributeAuthorityConfiguration.getHedgeAfterMilliseconds();
+        if (hedgeAfter <= 0) {
+            return requestFactory;
+        }
+        HedgeBudget hedgeBudget = new HedgeBudget(attributeAuthorityConfiguration.getHedgeBudgetPercentage(), HEDGE_BURST);
+        //no more concurrent hedges than the budget can save up
+        this.hedgingRequestFactory = new HedgingClientHttpRequestFactory(requestFactory, hedgeAfter, hedgeBudget,
+                HEDGE_BURST, getAttributeAuthorityId());
+        return hedgingRequestFactory;
+    }
+
+    @Override
+    public void shutdown() {
+        if (hedgingRequestFactory != null) {
+            hedgingRequestFactory.shutdown();
+        }
     }
 
     @Override
@@ -35,4 +35,15 @@ public interface AttributeAggregator {
 
     List<UserAttribute> filterInvalidResponses(List<UserAttribute> input);
 
+    /**
+     * @return the socket timeout in milliseconds used for the next call to the authority
+     */
+    int getEffectiveTimeOut();
+
+    /**
+     * Stops the threads of the aggregator, called on context close.
+     */
+    default void shutdown() {
+    }
+
 }
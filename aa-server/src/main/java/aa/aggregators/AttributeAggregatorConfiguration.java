@@ -12,6 +12,8 @@ import aa.aggregators.sab.SabAttributeAggregator;
 import aa.aggregators.sbs.SBSAttributeAggregator;
 import aa.aggregators.test.TestingAttributeAggregator;
 import aa.aggregators.voot.VootAttributeAggregator;
+import aa.analytics.AnalyticsPublisher;
+import aa.cache.RefreshAhead;
 import aa.cache.UserAttributeCache;
 import aa.config.AuthorityConfiguration;
 import aa.config.AuthorityResolver;
@@ -20,6 +22,7 @@ import aa.model.AttributeAuthorityConfiguration;
 import aa.repository.AccountRepository;
 import aa.repository.PseudoEmailRepository;
 import aa.service.AttributeAggregatorService;
+import aa.service.FanOutExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -41,6 +44,10 @@ public class AttributeAggregatorConfiguration {
     private final UserAttributeCache userAttributeCache;
     private final AccountRepository accountRepository;
     private final PseudoEmailRepository pseudoEmailRepository;
+    private final long aggregateDeadline;
+    private final FanOutExecutor fanOutExecutor;
+    private final AnalyticsPublisher analyticsPublisher;
+    private final RefreshAhead refreshAhead;
 
     @Autowired
     public AttributeAggregatorConfiguration(@Value("${authorization_access_token_url}") String authorizationAccessTokenUrl,
@@ -48,13 +55,21 @@ public class AttributeAggregatorConfiguration {
                                             AuthorityResolver authorityResolver,
                                             UserAttributeCache userAttributeCache,
                                             AccountRepository accountRepository,
-                                            PseudoEmailRepository pseudoEmailRepository) {
+                                            PseudoEmailRepository pseudoEmailRepository,
+                                            @Value("${aggregate_deadline_milliseconds}") long aggregateDeadline,
+                                            FanOutExecutor fanOutExecutor,
+                                            AnalyticsPublisher analyticsPublisher,
+                                            RefreshAhead refreshAhead) {
         this.authorizationAccessTokenUrl = authorizationAccessTokenUrl;
         this.pseudoMailPostfix = pseudoMailPostfix;
         this.authorityResolver = authorityResolver;
         this.userAttributeCache = userAttributeCache;
         this.accountRepository = accountRepository;
         this.pseudoEmailRepository = pseudoEmailRepository;
+        this.aggregateDeadline = aggregateDeadline;
+        this.fanOutExecutor = fanOutExecutor;
+        this.analyticsPublisher = analyticsPublisher;
+        this.refreshAhead = refreshAhead;
     }
 
     @Bean
@@ -75,7 +90,8 @@ public class AttributeAggregatorConfiguration {
                 .map(aggregatorFunction)
                 .filter(Objects::nonNull)
                 .collect(toList());
-        return new AttributeAggregatorService(attributeAggregators, configuration, userAttributeCache);
+        return new AttributeAggregatorService(attributeAggregators, configuration, userAttributeCache, aggregateDeadline,
+                fanOutExecutor, analyticsPublisher, refreshAhead);
     }
 
     private AttributeAggregator attributeAggregatorById(AttributeAuthorityConfiguration configuration) {
@@ -0,0 +1,284 @@
+package aa.aggregators;
+
+import aa.resilience.Cancellation;
+import aa.resilience.HedgeBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Issues a second, identical, request if the first one has not answered within hedgeAfterMillis. The first
+ * successful response wins and the other request is aborted. The number of hedges is limited by the HedgeBudget.
+ * <p>
+ * The first request runs on the calling thread, only the hedges run on a small executor of at most
+ * maxConcurrentHedges threads; without a free thread there is no hedge. When the calling thread is interrupted -
+ * e.g. by the deadline of the aggregation - the requests are aborted at the next check, every hedgeAfterMillis.
+ * <p>
+ * Only use for authorities where the request is a - idempotent - lookup.
+ */
+public class HedgingClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingClientHttpRequestFactory.class);
+
+    private final AbortableClientHttpRequestFactory delegate;
+    private final long hedgeAfterMillis;
+    private final HedgeBudget hedgeBudget;
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor hedges;
+
+    public HedgingClientHttpRequestFactory(AbortableClientHttpRequestFactory delegate, long hedgeAfterMillis,
+                                           HedgeBudget hedgeBudget, int maxConcurrentHedges, String authorityId) {
+        this.delegate = delegate;
+        this.hedgeAfterMillis = hedgeAfterMillis;
+        this.hedgeBudget = hedgeBudget;
+        CustomizableThreadFactory timerThreadFactory = new CustomizableThreadFactory("hedge-timer-" + authorityId + "-");
+        timerThreadFactory.setDaemon(true);
+        this.timer = newSingleThreadScheduledExecutor(timerThreadFactory);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("hedge-" + authorityId + "-");
+        threadFactory.setDaemon(true);
+        this.hedges = new ThreadPoolExecutor(0, maxConcurrentHedges, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            threadFactory);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new HedgingClientHttpRequest(uri, httpMethod);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        hedges.shutdownNow();
+    }
+
+    private class HedgingClientHttpRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        private HedgingClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public String getMethodValue() {
+            return method.name();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            hedgeBudget.onRequest();
+            Exchange exchange = new Exchange(uri, method, headers, body.toByteArray(), Thread.currentThread());
+            ScheduledFuture<?> check = null;
+            try {
+                check = timer.scheduleWithFixedDelay(exchange::check, hedgeAfterMillis, hedgeAfterMillis,
+                    TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                //shut down, no hedging
+            }
+            try {
+                return exchange.execute();
+            } finally {
+                if (check != null) {
+                    check.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * The primary attempt and the optional hedge of one request. The primary runs on the calling thread, the checks
+     * and the completion of the hedge on other threads.
+     */
+    private class Exchange {
+
+        private final URI uri;
+        private final Attempt primary;
+        private final Attempt hedge;
+        private final Thread caller;
+        private final CompletableFuture<ClientHttpResponse> winner = new CompletableFuture<>();
+        private CompletableFuture<ClientHttpResponse> hedgeResponse;
+        private boolean done;
+
+        private Exchange(URI uri, HttpMethod method, HttpHeaders headers, byte[] body, Thread caller) {
+            this.uri = uri;
+            this.primary = new Attempt(uri, method, headers, body);
+            this.hedge = new Attempt(uri, method, headers, body);
+            this.caller = caller;
+            //the hedge runs on another thread, so it does not register with the call itself
+            Cancellation.onCancel(() -> {
+                primary.abort();
+                hedge.abort();
+            });
+        }
+
+        private ClientHttpResponse execute() throws IOException {
+            ClientHttpResponse response;
+            try {
+                response = primary.execute();
+            } catch (IOException | RuntimeException e) {
+                return onPrimaryFailure(e);
+            }
+            synchronized (this) {
+                done = true;
+            }
+            if (winner.complete(response)) {
+                hedge.abort();
+                return response;
+            }
+            //the hedge won while the primary response arrived
+            response.close();
+            return winner.join();
+        }
+
+        //the primary failed by itself or was aborted because the hedge won or the caller gave up
+        private ClientHttpResponse onPrimaryFailure(Exception e) throws IOException {
+            CompletableFuture<ClientHttpResponse> hedgeResponse;
+            synchronized (this) {
+                done = true;
+                hedgeResponse = this.hedgeResponse;
+            }
+            if (hedgeResponse == null) {
+                throw rethrow(e);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                hedge.abort();
+                throw new InterruptedIOException("Interrupted while waiting for " + uri);
+            }
+            try {
+                return hedgeResponse.get();
+            } catch (InterruptedException ie) {
+                hedge.abort();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + uri);
+            } catch (ExecutionException ee) {
+                e.addSuppressed(ee.getCause());
+                throw rethrow(e);
+            }
+        }
+
+        //runs every hedgeAfterMillis on the timer until the primary is done
+        private synchronized void check() {
+            if (done) {
+                return;
+            }
+            if (caller.isInterrupted()) {
+                LOG.debug("Aborting abandoned request to {}", uri);
+                primary.abort();
+                hedge.abort();
+                return;
+            }
+            if (hedgeResponse != null || !hedgeBudget.tryAcquire()) {
+                return;
+            }
+            try {
+                hedgeResponse = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return hedge.execute();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, hedges);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("No thread available to hedge request to {}", uri);
+                hedgeResponse = null;
+                return;
+            }
+            LOG.debug("Hedging request to {} after {} ms", uri, hedgeAfterMillis);
+            hedgeResponse.thenAccept(response -> {
+                if (winner.complete(response)) {
+                    primary.abort();
+                } else {
+                    response.close();
+                }
+            });
+        }
+
+        private IOException rethrow(Exception e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            return (IOException) e;
+        }
+    }
+
+    private class Attempt {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private Runnable abort;
+        private boolean aborted;
+
+        private Attempt(URI uri, HttpMethod method, HttpHeaders headers, byte[] body) {
+            this.uri = uri;
+            this.method = method;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        private ClientHttpResponse execute() throws IOException {
+            synchronized (this) {
+                if (aborted) {
+                    throw new InterruptedIOException("Aborted request to " + uri);
+                }
+            }
+            ClientHttpRequest request = delegate.createRequest(uri, method, this::onCreated);
+            request.getHeaders().putAll(headers);
+            if (body.length > 0) {
+                StreamUtils.copy(body, request.getBody());
+            }
+            return request.execute();
+        }
+
+        private synchronized void onCreated(Runnable abort) {
+            this.abort = abort;
+            if (aborted) {
+                abort.run();
+            }
+        }
+
+        private synchronized void abort() {
+            aborted = true;
+            if (abort != null) {
+                abort.run();
+            }
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package aa.aggregators;
 
+import aa.resilience.AdaptiveTimeout;
 import org.apache.http.HttpHost;
 import org.apache.http.client.AuthCache;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -19,15 +20,28 @@ import java.net.URL;
  * Default HttpClient does not support Preemptive authentication. Spring has added a hook to
  * support this: https://jira.spring.io/browse/SPR-8367
  */
-public class PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+public class PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory extends AbortableHttpComponentsClientHttpRequestFactory {
 
     private HttpContext httpContext;
+    private RequestConfig requestConfig;
+    private AdaptiveTimeout adaptiveTimeout;
 
     public PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(HttpClient httpClient, String url) throws MalformedURLException {
         super(httpClient);
         this.httpContext = this.initHttpContext(url);
     }
 
+    /**
+     * Overrides the socket timeout of the requestConfig per request with the current timeout of the adaptiveTimeout.
+     */
+    public PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(HttpClient httpClient, String url,
+                                                                          RequestConfig requestConfig,
+                                                                          AdaptiveTimeout adaptiveTimeout) throws MalformedURLException {
+        this(httpClient, url);
+        this.requestConfig = requestConfig;
+        this.adaptiveTimeout = adaptiveTimeout;
+    }
+
     private HttpContext initHttpContext(String url) throws MalformedURLException {
         URL parsedUrl = new URL(url);
         HttpHost targetHost = new HttpHost(parsedUrl.getHost(), parsedUrl.getPort(), parsedUrl.getProtocol());
@@ -41,6 +55,13 @@ public class PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory exte
 
     @Override
     protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
-        return this.httpContext;
+        if (adaptiveTimeout == null) {
+            return this.httpContext;
+        }
+        //the attributes of the shared context - e.g. the auth cache - are inherited
+        HttpContext context = new BasicHttpContext(this.httpContext);
+        context.setAttribute(HttpClientContext.REQUEST_CONFIG, RequestConfig.copy(requestConfig)
+                .setSocketTimeout(adaptiveTimeout.currentTimeoutMillis()).build());
+        return context;
     }
 }
@@ -1,5 +1,6 @@
 package aa.aggregators.entitlements;
 
+import aa.aggregators.AbortableHttpComponentsClientHttpRequestFactory;
 import aa.aggregators.AbstractAttributeAggregator;
 import aa.model.ArpValue;
 import aa.model.AttributeAuthorityConfiguration;
@@ -10,7 +11,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
@@ -33,7 +33,7 @@ public class EntitlementsAggregator extends AbstractAttributeAggregator {
     @Override
     protected RestTemplate initializeRestTemplate(AttributeAuthorityConfiguration attributeAuthorityConfiguration) {
         int timeOut = attributeAuthorityConfiguration.getTimeOut();
-        HttpComponentsClientHttpRequestFactory httpRequestFactory = new HttpComponentsClientHttpRequestFactory();
+        AbortableHttpComponentsClientHttpRequestFactory httpRequestFactory = new AbortableHttpComponentsClientHttpRequestFactory();
         httpRequestFactory.setConnectionRequestTimeout(timeOut);
         httpRequestFactory.setConnectTimeout(timeOut);
         httpRequestFactory.setReadTimeout(timeOut);
@@ -95,8 +95,8 @@ public class RestAttributeAggregator extends AbstractAttributeAggregator {
                 rootList = List.of((Map<String, Object>) obj);
             }
         } catch (JsonProcessingException exception) {
-            LOG.error("Can not parse response from REST endpoint, returning empty enriched attribute list", exception);
-            return Collections.emptyList();
+            //fail the call, an empty list would be cached as 'the authority has nothing for this user'
+            throw new IllegalStateException("Can not parse response from REST endpoint " + configuration.getId(), exception);
         }
         rootList.forEach(m -> configuration.getMappings().forEach(mapping -> {
             // Check if filter is present and applies
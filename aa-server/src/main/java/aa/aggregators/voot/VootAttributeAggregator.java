@@ -44,6 +44,7 @@ public class VootAttributeAggregator extends AbstractAttributeAggregator {
         details.setClientSecret(configuration.getPassword());
         details.setAccessTokenUri(authorizationAccessTokenUrl);
         details.setScope(singletonList("groups"));
-        return new OAuth2RestTemplate(details);
+        //the timeouts, the hedging and the adaptive timeout of the authority apply to the groups requests
+        return configure(new OAuth2RestTemplate(details));
     }
 }
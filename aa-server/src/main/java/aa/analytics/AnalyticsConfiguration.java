@@ -0,0 +1,17 @@
+package aa.analytics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AnalyticsConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public AnalyticsPublisher analyticsPublisher(@Value("${analytics.buffer_capacity}") int bufferCapacity,
+                                                 @Value("${analytics.sample_rate}") double sampleRate,
+                                                 @Value("${analytics.flush_interval_milliseconds}") long flushInterval) {
+        return new AnalyticsPublisher(bufferCapacity, sampleRate, flushInterval);
+    }
+
+}
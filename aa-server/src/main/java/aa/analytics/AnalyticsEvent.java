@@ -0,0 +1,44 @@
+package aa.analytics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Summary of one aggregation request. Only counts and timings are recorded - never attribute values - and the
+ * event is rendered by the background writer of the {@link AnalyticsPublisher} and not by the request thread.
+ */
+@Getter
+@AllArgsConstructor
+public class AnalyticsEvent {
+
+    private final long timestamp;
+    private final long durationMillis;
+    private final int inputAttributeCount;
+    private final int arpAttributeCount;
+    private final int aggregatedAttributeCount;
+    private final int releasedAttributeCount;
+    private final AuthorityCall[] authorityCalls;
+
+    void appendTo(StringBuilder sb) {
+        sb.append("ts=").append(Instant.ofEpochMilli(timestamp))
+            .append(" duration=").append(durationMillis)
+            .append(" input=").append(inputAttributeCount)
+            .append(" arp=").append(arpAttributeCount)
+            .append(" aggregated=").append(aggregatedAttributeCount)
+            .append(" released=").append(releasedAttributeCount)
+            .append(" authorities=[");
+        for (int i = 0; i < authorityCalls.length; i++) {
+            AuthorityCall call = authorityCalls[i];
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(call.getAuthorityId()).append(':')
+                .append(call.getOutcome()).append(':')
+                .append(call.getDurationMillis()).append(':')
+                .append(call.getAttributeCount());
+        }
+        sb.append(']');
+    }
+}
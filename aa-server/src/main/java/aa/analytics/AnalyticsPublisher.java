@@ -0,0 +1,115 @@
+package aa.analytics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands analytics events from the request threads to a single background writer. Publishing is a lock-free offer
+ * to a ring buffer, when the buffer is full the event is dropped and counted. The writer renders the events in
+ * batches to the "analytics" logger, one compact line per event.
+ */
+public class AnalyticsPublisher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalyticsPublisher.class);
+    private static final Logger ANALYTICS_LOG = LoggerFactory.getLogger("analytics");
+    private static final int BATCH_SIZE = 256;
+
+    private final RingBuffer<AnalyticsEvent> ringBuffer;
+    private final double sampleRate;
+    private final long flushIntervalMillis;
+    private final Consumer<String> sink;
+    private final LongAdder dropped = new LongAdder();
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long droppedReported;
+
+    /**
+     * @param capacity            the maximum number of events waiting for the writer
+     * @param sampleRate          the fraction - between 0 and 1 - of the aggregation requests that is recorded
+     * @param flushIntervalMillis how long the writer sleeps when there are no events
+     */
+    public AnalyticsPublisher(int capacity, double sampleRate, long flushIntervalMillis) {
+        this(capacity, sampleRate, flushIntervalMillis, ANALYTICS_LOG::info);
+    }
+
+    AnalyticsPublisher(int capacity, double sampleRate, long flushIntervalMillis, Consumer<String> sink) {
+        this.ringBuffer = new RingBuffer<>(capacity);
+        this.sampleRate = sampleRate;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.sink = sink;
+        this.writer = new Thread(this::write, "analytics-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        LOG.info("Started analytics writer with capacity {} and sample rate {}", ringBuffer.capacity(), sampleRate);
+    }
+
+    /**
+     * @return true if the current aggregation request must be recorded
+     */
+    public boolean isSampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    public void publish(AnalyticsEvent event) {
+        if (!running || !ringBuffer.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        while (running) {
+            try {
+                if (flush() == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to write analytics events", e);
+            }
+        }
+        flush();
+    }
+
+    //only called by the writer thread
+    private int flush() {
+        int total = 0;
+        int drained;
+        do {
+            drained = ringBuffer.drain(this::writeEvent, BATCH_SIZE);
+            total += drained;
+        } while (drained == BATCH_SIZE);
+
+        long droppedNow = dropped.sum();
+        if (droppedNow > droppedReported) {
+            LOG.warn("Dropped {} analytics events because the writer could not keep up", droppedNow - droppedReported);
+            droppedReported = droppedNow;
+        }
+        return total;
+    }
+
+    private void writeEvent(AnalyticsEvent event) {
+        line.setLength(0);
+        event.appendTo(line);
+        sink.accept(line.toString());
+    }
+}
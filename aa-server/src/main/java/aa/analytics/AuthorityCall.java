@@ -0,0 +1,22 @@
+package aa.analytics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The outcome of querying one attribute authority for one aggregation request.
+ */
+@Getter
+@AllArgsConstructor
+public class AuthorityCall {
+
+    public enum Outcome {
+        CACHE_HIT, FETCHED, FAILED, CIRCUIT_OPEN, REJECTED, TIMED_OUT, SKIPPED
+    }
+
+    private final String authorityId;
+    private final Outcome outcome;
+    private final long durationMillis;
+    private final int attributeCount;
+
+}
@@ -0,0 +1,63 @@
+package aa.arp;
+
+import aa.model.ArpValue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles ARP's and keeps the most recently used compiled ARP's. EngineBlock sends the same ARP for a Service
+ * Provider over and over, so in practice the ARP is compiled once.
+ */
+public class ArpCompiler {
+
+    private final Map<ArpKey, CompiledArp> cache;
+
+    public ArpCompiler(int maximumSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<ArpKey, CompiledArp>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ArpKey, CompiledArp> eldest) {
+                return size() > maximumSize;
+            }
+        });
+    }
+
+    public CompiledArp compile(Map<String, List<ArpValue>> arpAttributes) {
+        ArpKey key = new ArpKey(arpAttributes);
+        CompiledArp compiledArp = cache.get(key);
+        if (compiledArp == null) {
+            compiledArp = new CompiledArp(arpAttributes);
+            cache.put(key, compiledArp);
+        }
+        return compiledArp;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    //content based key, the hash is computed once
+    private static class ArpKey {
+
+        private final Map<String, List<ArpValue>> arpAttributes;
+        private final int hash;
+
+        private ArpKey(Map<String, List<ArpValue>> arpAttributes) {
+            this.arpAttributes = arpAttributes;
+            this.hash = arpAttributes.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof ArpKey && hash == ((ArpKey) o).hash &&
+                arpAttributes.equals(((ArpKey) o).arpAttributes));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package aa.arp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The allowed values of one ARP attribute for one source. Equivalent to - but much cheaper than - checking every
+ * ARP value for every returned value:
+ * <ul>
+ * <li>'*' allows every value</li>
+ * <li>'prefix*' allows every value starting with - case sensitive - prefix</li>
+ * <li>any other value allows the value ignoring case</li>
+ * </ul>
+ */
+public class ArpMatcher {
+
+    private boolean matchAll;
+    private final Set<String> exactValues = new HashSet<>();
+    private final PrefixNode prefixes = new PrefixNode();
+
+    void add(String arpValue) {
+        if (arpValue == null) {
+            return;
+        }
+        if (arpValue.equals("*")) {
+            matchAll = true;
+            return;
+        }
+        exactValues.add(fold(arpValue));
+        if (arpValue.endsWith("*")) {
+            prefixes.add(arpValue.substring(0, arpValue.length() - 1));
+        }
+    }
+
+    public boolean matches(String value) {
+        if (matchAll) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        return prefixes.matchesPrefixOf(value) || exactValues.contains(fold(value));
+    }
+
+    //Same semantics as String#equalsIgnoreCase, which compares per character
+    static String fold(String value) {
+        char[] chars = value.toCharArray();
+        boolean changed = false;
+        for (int i = 0; i < chars.length; i++) {
+            char folded = Character.toLowerCase(Character.toUpperCase(chars[i]));
+            if (folded != chars[i]) {
+                chars[i] = folded;
+                changed = true;
+            }
+        }
+        return changed ? new String(chars) : value;
+    }
+
+    private static class PrefixNode {
+
+        private Map<Character, PrefixNode> children;
+        private boolean terminal;
+
+        void add(String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixNode());
+            }
+            node.terminal = true;
+        }
+
+        boolean matchesPrefixOf(String value) {
+            PrefixNode node = this;
+            for (int i = 0; ; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i == value.length() || node.children == null) {
+                    return false;
+                }
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+    }
+}
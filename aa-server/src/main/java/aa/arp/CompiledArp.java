@@ -0,0 +1,44 @@
+package aa.arp;
+
+import aa.model.ArpValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ARP - attribute name to allowed values and sources - compiled into one ArpMatcher per attribute and source.
+ */
+public class CompiledArp {
+
+    private final Map<String, Map<String, ArpMatcher>> matchers = new HashMap<>();
+    private final Set<String> sources = new HashSet<>();
+
+    public CompiledArp(Map<String, List<ArpValue>> arpAttributes) {
+        arpAttributes.forEach((attributeName, arpValues) -> {
+            if (arpValues == null) {
+                return;
+            }
+            Map<String, ArpMatcher> matchersPerSource = matchers.computeIfAbsent(attributeName, key -> new HashMap<>());
+            arpValues.forEach(arpValue -> {
+                sources.add(arpValue.getSource());
+                matchersPerSource.computeIfAbsent(arpValue.getSource(), key -> new ArpMatcher()).add(arpValue.getValue());
+            });
+        });
+    }
+
+    /**
+     * @return the matcher or null if the ARP does not release the attribute from this source
+     */
+    public ArpMatcher matcher(String attributeName, String source) {
+        Map<String, ArpMatcher> matchersPerSource = matchers.get(attributeName);
+        return matchersPerSource != null ? matchersPerSource.get(source) : null;
+    }
+
+    public Set<String> getSources() {
+        return Collections.unmodifiableSet(sources);
+    }
+}
@@ -15,38 +15,113 @@ public abstract class AbstractUserAttributeCache implements UserAttributeCache {
     protected final Logger LOG = LoggerFactory.getLogger(getClass());
 
     private final long cacheDuration;
-    private final boolean cacheInActive;
+    private final long staleWhileRevalidateDuration;
+    private final long negativeCacheDuration;
+    private CacheStatistics statistics = new CacheStatistics();
 
     public AbstractUserAttributeCache(long cacheDurationMilliseconds) {
+        this(cacheDurationMilliseconds, 0);
+    }
+
+    /**
+     * @param staleWhileRevalidateMilliseconds how long an entry is still served after the cacheDuration has passed,
+     *                                         while it is refreshed in the background
+     */
+    public AbstractUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds) {
+        this(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, 0);
+    }
+
+    /**
+     * @param negativeCacheDurationMilliseconds how long an empty result is cached for authorities that do not
+     *                                          override it, zero disables negative caching
+     */
+    public AbstractUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                      long negativeCacheDurationMilliseconds) {
         this.cacheDuration = cacheDurationMilliseconds;
-        cacheInActive = cacheDurationMilliseconds <= 0;
+        this.staleWhileRevalidateDuration = Math.max(0, staleWhileRevalidateMilliseconds);
+        this.negativeCacheDuration = Math.max(0, negativeCacheDurationMilliseconds);
     }
 
     @Override
     public Optional<List<UserAttribute>> get(Optional<String> cacheKey) throws IOException {
-        if (cacheInActive || !cacheKey.isPresent()) {
+        return getEntry(cacheKey).map(CacheEntry::getUserAttributes);
+    }
+
+    @Override
+    public Optional<CacheEntry> getEntry(Optional<String> cacheKey) throws IOException {
+        //without a positive cacheDuration only the authorities with their own cache policy have entries
+        if (!cacheKey.isPresent()) {
             return Optional.empty();
         }
-        List<UserAttribute> userAttributes = this.doGet(cacheKey.get());
-        LOG.debug("Returning userAttributes from cache {}", userAttributes);
-        return userAttributes != null ? Optional.of(userAttributes) : Optional.empty();
+        CacheEntry cacheEntry = this.doGet(cacheKey.get());
+        if (cacheEntry == null || cacheEntry.isExpired(System.currentTimeMillis())) {
+            statistics.recordMiss(cacheKey.get());
+            return Optional.empty();
+        }
+        statistics.recordHit(cacheKey.get());
+        LOG.debug("Returning userAttributes from cache {}", cacheEntry.getUserAttributes());
+        return Optional.of(cacheEntry);
     }
 
     //may return null as only used internally
-    protected abstract List<UserAttribute> doGet(String cacheKey) throws IOException;
+    protected abstract CacheEntry doGet(String cacheKey) throws IOException;
 
     @Override
     public void put(Optional<String> cacheKey, List<UserAttribute> userAttributes) throws IOException {
-        if (!cacheInActive && cacheKey.isPresent() && !CollectionUtils.isEmpty(userAttributes)) {
+        put(cacheKey, userAttributes, CachePolicy.DEFAULT);
+    }
+
+    @Override
+    public void put(Optional<String> cacheKey, List<UserAttribute> userAttributes, CachePolicy cachePolicy) throws IOException {
+        if (!cacheKey.isPresent() || cachePolicy.isNoCache()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (CollectionUtils.isEmpty(userAttributes)) {
+            long duration = cachePolicy.getNegativeCacheDuration() < 0 ? negativeCacheDuration :
+                cachePolicy.getNegativeCacheDuration();
+            if (duration > 0) {
+                LOG.debug("Putting negative entry in cache with key {}", cacheKey.get());
+                this.doPut(cacheKey.get(), CacheEntry.negative(now + duration));
+                statistics.recordPut(cacheKey.get());
+            }
+            return;
+        }
+        long duration = cachePolicy.getCacheDuration() < 0 ? cacheDuration : cachePolicy.getCacheDuration();
+        if (duration > 0) {
             LOG.debug("Putting userAttributes in cache {} with key {}", userAttributes, cacheKey.get());
-            this.doPut(cacheKey.get(), userAttributes);
+            this.doPut(cacheKey.get(), new CacheEntry(userAttributes, now + duration,
+                now + duration + staleWhileRevalidateDuration));
+            statistics.recordPut(cacheKey.get());
         }
     }
 
-    //may return null as only used internally
-    protected abstract void doPut(String cacheKey, List<UserAttribute> userAttributes) throws JsonProcessingException;
+    protected abstract void doPut(String cacheKey, CacheEntry cacheEntry) throws JsonProcessingException;
+
+    @Override
+    public Optional<CacheEntry> inspect(String cacheKey) throws IOException {
+        return Optional.ofNullable(doGet(cacheKey));
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    //a cache that is used as a tier of another cache reports its evictions and expiries to the statistics of the other
+    void setStatistics(CacheStatistics statistics) {
+        this.statistics = statistics;
+    }
 
     public long getCacheDuration() {
         return cacheDuration;
     }
+
+    public long getStaleWhileRevalidateDuration() {
+        return staleWhileRevalidateDuration;
+    }
+
+    public long getNegativeCacheDuration() {
+        return negativeCacheDuration;
+    }
 }
@@ -0,0 +1,362 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * In-memory cache with a maximum total weight - the number of entries or their estimated size in bytes - that
+ * evicts with the W-TinyLFU policy.
+ * <p>
+ * New entries enter a small LRU window. Entries that fall out of the window only enter the main space if they were
+ * accessed more often - according to a {@link FrequencySketch} - than the entry that would be evicted for them, so
+ * users that log in once do not push out the hot working set. The main space is a segmented LRU where entries that
+ * are accessed again are promoted from probation to protected.
+ * <p>
+ * Reads are served from a ConcurrentHashMap. The eviction policy is guarded by a lock, reads only record their access
+ * when the lock is free, so under contention some accesses are not counted. Expired entries are removed with a
+ * {@link TimerWheel}.
+ * <p>
+ * Do not use in clustered environment when accessing the Attribute Aggregator through a load balancer.
+ */
+public class BoundedUserAttributeCache extends AbstractUserAttributeCache {
+
+    public static final ToIntFunction<CacheEntry> ENTRIES = cacheEntry -> 1;
+    public static final ToIntFunction<CacheEntry> BYTES = BoundedUserAttributeCache::estimateBytes;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Map<String, Node> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ToIntFunction<CacheEntry> weigher;
+    private final long maximumWeight;
+    private final long maximumWindowWeight;
+    private final long maximumProtectedWeight;
+    private final FrequencySketch sketch;
+    private final TimerWheel<String> timerWheel = new TimerWheel<>(System.currentTimeMillis());
+    private final ScheduledExecutorService cleaner;
+    private final Deque window = new Deque();
+    private final Deque probation = new Deque();
+    private final Deque protectedDeque = new Deque();
+    private long windowWeight;
+    private long protectedWeight;
+    private long totalWeight;
+
+    /**
+     * @param maximumWeight   the maximum total weight of all entries
+     * @param weigher         {@link #ENTRIES} to bound the number of entries or {@link #BYTES} to bound the size
+     * @param expectedEntries the number of entries the frequency sketch is sized for
+     */
+    public BoundedUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                     long negativeCacheDurationMilliseconds, long maximumWeight,
+                                     ToIntFunction<CacheEntry> weigher, long expectedEntries,
+                                     long clearExpiredAggregatesPeriod) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.maximumWindowWeight = Math.max(1, this.maximumWeight / 100);
+        this.maximumProtectedWeight = (this.maximumWeight - maximumWindowWeight) * 80 / 100;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(expectedEntries);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("aggregate-cache-cleaner-");
+        threadFactory.setDaemon(true);
+        this.cleaner = newSingleThreadScheduledExecutor(threadFactory);
+        this.cleaner.scheduleAtFixedRate(this::clearExpiredAggregates, clearExpiredAggregatesPeriod,
+            clearExpiredAggregatesPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected CacheEntry doGet(String cacheKey) {
+        Node node = data.get(cacheKey);
+        if (node == null) {
+            return null;
+        }
+        if (evictionLock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.cacheEntry;
+    }
+
+    @Override
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) {
+        int weight = weigher.applyAsInt(cacheEntry);
+        evictionLock.lock();
+        try {
+            Node node = data.get(cacheKey);
+            if (node == null) {
+                node = new Node(cacheKey, cacheEntry, weight);
+                data.put(cacheKey, node);
+                sketch.increment(cacheKey);
+                window.addLast(node);
+                windowWeight += weight;
+                totalWeight += weight;
+            } else {
+                long delta = weight - node.weight;
+                node.cacheEntry = cacheEntry;
+                node.weight = weight;
+                totalWeight += delta;
+                if (node.queue == WINDOW) {
+                    windowWeight += delta;
+                } else if (node.queue == PROTECTED) {
+                    protectedWeight += delta;
+                }
+                onAccess(node);
+            }
+            timerWheel.schedule(cacheKey, cacheEntry.getExpiresAt());
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void evict(String cacheKey) {
+        evictionLock.lock();
+        try {
+            Node node = data.get(cacheKey);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public long evictAuthority(String attributeAuthorityId) {
+        long evicted = 0;
+        evictionLock.lock();
+        try {
+            for (Node node : data.values()) {
+                if (attributeAuthorityId.equals(CacheKeyBuilder.attributeAuthorityId(node.key))) {
+                    remove(node);
+                    evicted++;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        return evicted;
+    }
+
+    @Override
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public long entryCount() {
+        return data.size();
+    }
+
+    //visits all entries, unless the cache is bounded in bytes
+    @Override
+    public long estimatedBytes() {
+        return weigher == BYTES ? weight() :
+            data.values().stream().mapToLong(node -> estimateBytes(node.cacheEntry)).sum();
+    }
+
+    public long weight() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    void clearExpiredAggregates() {
+        long now = System.currentTimeMillis();
+        evictionLock.lock();
+        try {
+            timerWheel.advance(now, key -> {
+                Node node = data.get(key);
+                if (node != null && node.cacheEntry.isExpired(now)) {
+                    remove(node);
+                    getStatistics().recordExpiry(key);
+                }
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    //only called while holding the evictionLock
+    private void onAccess(Node node) {
+        if (node.queue < 0) {
+            //evicted concurrently
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > maximumProtectedWeight && protectedDeque.first() != node) {
+                Node demoted = protectedDeque.removeFirst();
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    //only called while holding the evictionLock
+    private void evict() {
+        //the entries that leave the window are candidates for the main space and compete with its least recent entry
+        Node candidate = null;
+        while (windowWeight > maximumWindowWeight) {
+            Node node = window.removeFirst();
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        while (totalWeight > maximumWeight) {
+            Node victim = probation.first();
+            if (candidate != null && victim != null && victim != candidate) {
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evict(victim);
+                } else {
+                    Node next = probation.next(candidate);
+                    evict(candidate);
+                    candidate = next;
+                }
+                continue;
+            }
+            Node node = victim != null ? victim : protectedDeque.first() != null ? protectedDeque.first() : window.first();
+            if (node == candidate) {
+                candidate = probation.next(candidate);
+            }
+            evict(node);
+        }
+    }
+
+    //only called while holding the evictionLock
+    private void evict(Node node) {
+        remove(node);
+        getStatistics().recordEviction(node.key);
+    }
+
+    //only called while holding the evictionLock
+    private void remove(Node node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+            windowWeight -= node.weight;
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else {
+            protectedDeque.remove(node);
+            protectedWeight -= node.weight;
+        }
+        totalWeight -= node.weight;
+        node.queue = -1;
+        data.remove(node.key, node);
+        timerWheel.cancel(node.key);
+        LOG.debug("Removed aggregation with key {}", node.key);
+    }
+
+    static int estimateBytes(CacheEntry cacheEntry) {
+        int bytes = 96;
+        for (UserAttribute userAttribute : cacheEntry.getUserAttributes()) {
+            bytes += 48 + length(userAttribute.getName()) + length(userAttribute.getSource());
+            List<String> values = userAttribute.getValues();
+            if (values != null) {
+                bytes += 16 + 4 * values.size();
+                for (String value : values) {
+                    bytes += length(value);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : 40 + s.length();
+    }
+
+    private static class Node {
+
+        private final String key;
+        private volatile CacheEntry cacheEntry;
+        private int weight;
+        private int queue = WINDOW;
+        private Node previous;
+        private Node next;
+
+        private Node(String key, CacheEntry cacheEntry, int weight) {
+            this.key = key;
+            this.cacheEntry = cacheEntry;
+            this.weight = weight;
+        }
+    }
+
+    //doubly linked list in access order, least recent first
+    private static class Deque {
+
+        private final Node head = new Node(null, null, 0);
+
+        private Deque() {
+            head.previous = head;
+            head.next = head;
+        }
+
+        private Node first() {
+            return head.next == head ? null : head.next;
+        }
+
+        private Node next(Node node) {
+            return node.next == head ? null : node.next;
+        }
+
+        private void addLast(Node node) {
+            node.previous = head.previous;
+            node.next = head;
+            head.previous.next = node;
+            head.previous = node;
+        }
+
+        private Node removeFirst() {
+            Node node = head.next;
+            remove(node);
+            return node;
+        }
+
+        private void remove(Node node) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node node) {
+            remove(node);
+            addLast(node);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cached result of one authority. After staleAt the entry is still served, but should be refreshed. After expiresAt
+ * the entry is gone.
+ * <p>
+ * A negative entry records that the authority answered without attributes for the user. It shares one immutable
+ * empty list instead of holding a list of its own.
+ */
+@Getter
+@AllArgsConstructor
+public class CacheEntry {
+
+    private final List<UserAttribute> userAttributes;
+    private final long staleAt;
+    private final long expiresAt;
+
+    public static CacheEntry negative(long expiresAt) {
+        return new CacheEntry(Collections.emptyList(), expiresAt, expiresAt);
+    }
+
+    public boolean isNegative() {
+        return userAttributes.isEmpty();
+    }
+
+    public boolean isStale(long now) {
+        return now >= staleAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,130 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a {@link CacheEntry} for the caches that store entries outside the heap. Counts and
+ * lengths are varints and strings are UTF-8. A negative entry is encoded as its marker and the expiry time only.
+ */
+public class CacheEntryCodec {
+
+    private static final byte NEGATIVE = 0;
+    private static final byte ATTRIBUTES = 1;
+
+    private CacheEntryCodec() {
+    }
+
+    public static byte[] encode(CacheEntry cacheEntry) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        if (cacheEntry.isNegative()) {
+            out.write(NEGATIVE);
+            writeLong(out, cacheEntry.getExpiresAt());
+            return out.toByteArray();
+        }
+        out.write(ATTRIBUTES);
+        writeLong(out, cacheEntry.getStaleAt());
+        writeLong(out, cacheEntry.getExpiresAt());
+        List<UserAttribute> userAttributes = cacheEntry.getUserAttributes();
+        writeVarInt(out, userAttributes.size());
+        for (UserAttribute userAttribute : userAttributes) {
+            writeString(out, userAttribute.getName());
+            writeString(out, userAttribute.getSource());
+            List<String> values = userAttribute.getValues() == null ? Collections.emptyList() : userAttribute.getValues();
+            writeVarInt(out, values.size());
+            values.forEach(value -> writeString(out, value));
+        }
+        return out.toByteArray();
+    }
+
+    public static CacheEntry decode(byte[] bytes) throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            byte type = in.get();
+            if (type == NEGATIVE) {
+                return CacheEntry.negative(in.getLong());
+            }
+            if (type != ATTRIBUTES) {
+                throw new IOException("Unknown cache entry type " + type);
+            }
+            long staleAt = in.getLong();
+            long expiresAt = in.getLong();
+            int size = readVarInt(in);
+            List<UserAttribute> userAttributes = new ArrayList<>(Math.min(size, in.remaining()));
+            for (int i = 0; i < size; i++) {
+                String name = readString(in);
+                String source = readString(in);
+                int valueCount = readVarInt(in);
+                List<String> values = new ArrayList<>(Math.min(valueCount, in.remaining()));
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(readString(in));
+                }
+                userAttributes.add(new UserAttribute(name, values, source));
+            }
+            return new CacheEntry(userAttributes, staleAt, expiresAt);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt cache entry", e);
+        }
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    //the length is written plus one, so zero means null
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Negative length");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String length exceeds entry");
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
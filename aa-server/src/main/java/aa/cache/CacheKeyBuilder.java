@@ -0,0 +1,88 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Builds the canonical cache key of an authority for the input of an aggregation: the id of the authority followed by
+ * a 128-bit hash - 32 hex characters - of the values of the required input attributes.
+ * <p>
+ * The required attributes are hashed in the order of the configuration and their values sorted and de-duplicated, so
+ * the key does not depend on the order of the input. Every name and value is prefixed with its length, so different
+ * inputs can not produce the same string to hash. Values are lower-cased for case-insensitive authorities.
+ */
+public class CacheKeyBuilder {
+
+    //the authority of keys that were not built by this class
+    public static final String UNKNOWN_AUTHORITY = "unknown";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int KEY_BYTES = 16;
+
+    private CacheKeyBuilder() {
+    }
+
+    /**
+     * @return the cache key or empty if the input has no values for the required attributes, so we don't hit the
+     * cache accidentally
+     */
+    public static Optional<String> cacheKey(String attributeAuthorityId, List<String> requiredKeys,
+                                            List<UserAttribute> input, boolean caseInsensitive) {
+        MessageDigest digest = sha256();
+        boolean hasValues = false;
+        for (String requiredKey : requiredKeys) {
+            TreeSet<String> values = new TreeSet<>();
+            input.stream()
+                .filter(userAttribute -> requiredKey.equals(userAttribute.getName()) && userAttribute.getValues() != null)
+                .flatMap(userAttribute -> userAttribute.getValues().stream())
+                .forEach(value -> values.add(caseInsensitive ? value.toLowerCase(Locale.ROOT) : value));
+            if (values.isEmpty()) {
+                continue;
+            }
+            hasValues = true;
+            update(digest, requiredKey);
+            update(digest, Integer.toString(values.size()));
+            values.forEach(value -> update(digest, value));
+        }
+        if (!hasValues) {
+            return Optional.empty();
+        }
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder(attributeAuthorityId.length() + 1 + KEY_BYTES * 2)
+            .append(attributeAuthorityId).append('-');
+        for (int i = 0; i < KEY_BYTES; i++) {
+            key.append(HEX[(hash[i] >> 4) & 0xF]).append(HEX[hash[i] & 0xF]);
+        }
+        return Optional.of(key.toString());
+    }
+
+    /**
+     * @return the id of the authority of a key built by this class or {@link #UNKNOWN_AUTHORITY}
+     */
+    public static String attributeAuthorityId(String cacheKey) {
+        int separator = cacheKey.length() - KEY_BYTES * 2 - 1;
+        return separator > 0 && cacheKey.charAt(separator) == '-' ? cacheKey.substring(0, separator) : UNKNOWN_AUTHORITY;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
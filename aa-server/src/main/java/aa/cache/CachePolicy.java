@@ -0,0 +1,30 @@
+package aa.cache;
+
+import aa.model.AttributeAuthorityConfiguration;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * How the results of one authority are cached, configured per authority in attributeAuthorities.yml. Negative
+ * durations mean the default of the cache is used.
+ */
+@Getter
+@AllArgsConstructor
+public class CachePolicy {
+
+    public static final CachePolicy DEFAULT = new CachePolicy(-1, -1, false);
+
+    //how long a non-empty result is fresh
+    private final long cacheDuration;
+    //how long an empty result - the authority knows nothing about the user - is cached, zero disables it
+    private final long negativeCacheDuration;
+    //results of the authority are never read from or put in the cache
+    private final boolean noCache;
+
+    public static CachePolicy of(AttributeAuthorityConfiguration configuration) {
+        return new CachePolicy(
+            configuration.getCacheDurationMilliseconds(),
+            configuration.getNegativeCacheDurationMilliseconds(),
+            configuration.isNoCache());
+    }
+}
@@ -0,0 +1,81 @@
+package aa.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counters per authority of the lookups, puts and removals of a cache. The authority is taken from the
+ * cache key, see {@link CacheKeyBuilder#attributeAuthorityId(String)}.
+ */
+public class CacheStatistics {
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public void recordHit(String cacheKey) {
+        counters(cacheKey).hits.increment();
+    }
+
+    public void recordMiss(String cacheKey) {
+        counters(cacheKey).misses.increment();
+    }
+
+    public void recordPut(String cacheKey) {
+        counters(cacheKey).puts.increment();
+    }
+
+    //removed to make room for other entries
+    public void recordEviction(String cacheKey) {
+        counters(cacheKey).evictions.increment();
+    }
+
+    //removed because the entry has expired
+    public void recordExpiry(String cacheKey) {
+        counters(cacheKey).expiries.increment();
+    }
+
+    /**
+     * @return the current counters per authority id, sorted by id
+     */
+    public Map<String, AuthorityStatistics> snapshot() {
+        Map<String, AuthorityStatistics> result = new TreeMap<>();
+        counters.forEach((authorityId, c) -> result.put(authorityId, new AuthorityStatistics(
+            c.hits.sum(), c.misses.sum(), c.puts.sum(), c.evictions.sum(), c.expiries.sum())));
+        return result;
+    }
+
+    private Counters counters(String cacheKey) {
+        String authorityId = CacheKeyBuilder.attributeAuthorityId(cacheKey);
+        Counters result = counters.get(authorityId);
+        return result != null ? result : counters.computeIfAbsent(authorityId, id -> new Counters());
+    }
+
+    private static class Counters {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder puts = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder expiries = new LongAdder();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class AuthorityStatistics {
+
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final long evictions;
+        private final long expiries;
+
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+}
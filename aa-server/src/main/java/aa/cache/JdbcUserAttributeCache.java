@@ -0,0 +1,168 @@
+package aa.cache;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Cache shared by all nodes, stored in the aggregate_cache table of the application database. Keys are stored as
+ * their SHA-256 hash - next to the id of their authority - and entries with the binary encoding of
+ * {@link CacheEntryCodec}.
+ * <p>
+ * Expired rows are ignored on read and deleted in batches by the node that is responsible for the cron jobs. The
+ * database is an optimization: when it fails, gets are treated as misses and puts are dropped. Entries larger than
+ * the MEDIUMBLOB column are not cached.
+ */
+public class JdbcUserAttributeCache extends AbstractUserAttributeCache {
+
+    //the maximum size of the MEDIUMBLOB entry column
+    static final int MAX_ENTRY_BYTES = (1 << 24) - 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int deleteBatchSize;
+    private final ScheduledExecutorService cleaner;
+
+    /**
+     * @param clearExpiredAggregatesPeriod how often expired rows are deleted, zero or less for never
+     * @param deleteBatchSize              the maximum number of rows deleted in one statement
+     */
+    public JdbcUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                  long negativeCacheDurationMilliseconds, JdbcTemplate jdbcTemplate,
+                                  long clearExpiredAggregatesPeriod, int deleteBatchSize) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        this.jdbcTemplate = jdbcTemplate;
+        this.deleteBatchSize = deleteBatchSize;
+        if (clearExpiredAggregatesPeriod > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("aggregate-cache-cleaner-");
+            threadFactory.setDaemon(true);
+            this.cleaner = newSingleThreadScheduledExecutor(threadFactory);
+            this.cleaner.scheduleWithFixedDelay(this::clearExpiredAggregates, clearExpiredAggregatesPeriod,
+                clearExpiredAggregatesPeriod, TimeUnit.MILLISECONDS);
+        } else {
+            this.cleaner = null;
+        }
+    }
+
+    @Override
+    protected CacheEntry doGet(String cacheKey) {
+        try {
+            List<byte[]> entries = jdbcTemplate.query(
+                "SELECT entry FROM aggregate_cache WHERE key_hash = ? AND expires_at > ?",
+                (rs, rowNum) -> rs.getBytes(1), hash(cacheKey), System.currentTimeMillis());
+            return entries.isEmpty() ? null : CacheEntryCodec.decode(entries.get(0));
+        } catch (DataAccessException | IOException e) {
+            LOG.warn("Get of {} from the aggregate_cache table failed: {}", cacheKey, e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) {
+        byte[] entry = CacheEntryCodec.encode(cacheEntry);
+        if (entry.length > MAX_ENTRY_BYTES) {
+            LOG.info("Not caching {} in the aggregate_cache table, the entry of {} bytes is too large", cacheKey, entry.length);
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO aggregate_cache (key_hash, authority_id, entry, expires_at) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE entry = VALUES(entry), expires_at = VALUES(expires_at)",
+                hash(cacheKey), CacheKeyBuilder.attributeAuthorityId(cacheKey), entry, cacheEntry.getExpiresAt());
+        } catch (DataAccessException e) {
+            LOG.warn("Put of {} in the aggregate_cache table failed: {}", cacheKey, e.toString());
+        }
+    }
+
+    @Override
+    public void evict(String cacheKey) {
+        try {
+            jdbcTemplate.update("DELETE FROM aggregate_cache WHERE key_hash = ?", (Object) hash(cacheKey));
+        } catch (DataAccessException e) {
+            LOG.warn("Evict of {} from the aggregate_cache table failed: {}", cacheKey, e.toString());
+        }
+    }
+
+    /**
+     * Deletes the rows of the authority in batches, so the table is not locked for long.
+     */
+    @Override
+    public long evictAuthority(String attributeAuthorityId) {
+        long total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update("DELETE FROM aggregate_cache WHERE authority_id = ? LIMIT ?",
+                    attributeAuthorityId, deleteBatchSize);
+                total += deleted;
+            } while (deleted == deleteBatchSize && !Thread.currentThread().isInterrupted());
+        } catch (DataAccessException e) {
+            LOG.warn("Evict of authority {} from the aggregate_cache table failed: {}", attributeAuthorityId, e.toString());
+        }
+        return total;
+    }
+
+    @Override
+    public long entryCount() {
+        return queryForLong("SELECT COUNT(*) FROM aggregate_cache WHERE expires_at > ?");
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return queryForLong("SELECT COALESCE(SUM(LENGTH(entry)), 0) FROM aggregate_cache WHERE expires_at > ?");
+    }
+
+    private long queryForLong(String sql) {
+        try {
+            Long result = jdbcTemplate.queryForObject(sql, Long.class, System.currentTimeMillis());
+            return result == null ? -1 : result;
+        } catch (DataAccessException e) {
+            LOG.warn("Query on the aggregate_cache table failed: {}", e.toString());
+            return -1;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes the expired rows in batches, so the table is not locked for long.
+     *
+     * @return the number of deleted rows
+     */
+    public int clearExpiredAggregates() {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update("DELETE FROM aggregate_cache WHERE expires_at <= ? LIMIT ?", now, deleteBatchSize);
+                total += deleted;
+            } while (deleted == deleteBatchSize && !Thread.currentThread().isInterrupted());
+            LOG.debug("Deleted {} expired rows from the aggregate_cache table", total);
+        } catch (DataAccessException e) {
+            LOG.warn("Deleting expired rows from the aggregate_cache table failed: {}", e.toString());
+        }
+        return total;
+    }
+
+    static byte[] hash(String cacheKey) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(cacheKey.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
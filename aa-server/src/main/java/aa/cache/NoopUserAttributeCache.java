@@ -7,8 +7,11 @@ import java.util.Optional;
 
 public class NoopUserAttributeCache implements UserAttributeCache {
 
+    private final CacheStatistics statistics = new CacheStatistics();
+
     @Override
     public Optional<List<UserAttribute>> get(Optional<String> cacheKey) {
+        cacheKey.ifPresent(statistics::recordMiss);
         return Optional.empty();
     }
 
@@ -16,4 +19,29 @@ public class NoopUserAttributeCache implements UserAttributeCache {
     public void put(Optional<String> cacheKey, List<UserAttribute> userAttributes) {
 
     }
+
+    @Override
+    public void evict(String cacheKey) {
+
+    }
+
+    @Override
+    public long evictAuthority(String attributeAuthorityId) {
+        return 0;
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public long entryCount() {
+        return 0;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 0;
+    }
 }
@@ -0,0 +1,192 @@
+package aa.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache that stores the entries outside the Java heap, in a ring of direct ByteBuffer slabs. Entries are appended as
+ * binary records - see {@link CacheEntryCodec} - to the current slab. When all slabs are full the oldest slab is
+ * emptied as a whole and reused, so eviction is FIFO per slab and there is no fragmentation. Expired and replaced
+ * entries are ignored until their slab is reused.
+ * <p>
+ * Only the index - key to slab and offset - lives on the heap. Entries are decoded into UserAttributes on a hit.
+ * Puts are appended one at a time. A get only locks the slab it reads, and only waits while that slab is emptied for
+ * reuse; the records of the reused slab are removed from the index before that, without blocking any get.
+ * The total size is slabCount * slabSize and counts towards -XX:MaxDirectMemorySize.
+ * <p>
+ * Do not use in clustered environment when accessing the Attribute Aggregator through a load balancer.
+ */
+public class OffHeapUserAttributeCache extends AbstractUserAttributeCache {
+
+    //record: int key length, key bytes, int entry length, entry bytes
+    private static final int HEADER = 8;
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    //guards the slabs that are written to and the append position
+    private final ReentrantLock appendLock = new ReentrantLock();
+    //the write lock of a slab is only held while it is emptied for reuse
+    private final ReentrantReadWriteLock[] slabLocks;
+    private int currentSlab;
+
+    public OffHeapUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                     long negativeCacheDurationMilliseconds, int slabCount, int slabSize) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        if (slabCount < 2) {
+            throw new IllegalArgumentException("At least two slabs are required");
+        }
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabLocks = new ReentrantReadWriteLock[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            slabLocks[i] = new ReentrantReadWriteLock();
+        }
+        //slabs are allocated when they are first used
+    }
+
+    @Override
+    protected CacheEntry doGet(String cacheKey) throws IOException {
+        Long location = index.get(cacheKey);
+        if (location == null) {
+            return null;
+        }
+        ReentrantReadWriteLock slabLock = slabLocks[slabOf(location)];
+        slabLock.readLock().lock();
+        try {
+            //the slab may have been emptied for reuse since the lookup
+            if (!location.equals(index.get(cacheKey))) {
+                return null;
+            }
+            ByteBuffer record = slabs[slabOf(location)].duplicate();
+            record.position(offsetOf(location));
+            int keyLength = record.getInt();
+            record.position(record.position() + keyLength);
+            byte[] entry = new byte[record.getInt()];
+            record.get(entry);
+            return CacheEntryCodec.decode(entry);
+        } finally {
+            slabLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) {
+        byte[] key = cacheKey.getBytes(StandardCharsets.UTF_8);
+        byte[] entry = CacheEntryCodec.encode(cacheEntry);
+        int length = HEADER + key.length + entry.length;
+        if (length > slabSize) {
+            LOG.warn("Not caching entry with key {} of {} bytes, which is larger than the slab size", cacheKey, length);
+            return;
+        }
+        appendLock.lock();
+        try {
+            ByteBuffer slab = slab(currentSlab);
+            if (slab.remaining() < length) {
+                currentSlab = (currentSlab + 1) % slabs.length;
+                slab = slab(currentSlab);
+                evict(currentSlab, slab);
+            }
+            long location = location(currentSlab, slab.position());
+            slab.putInt(key.length).put(key).putInt(entry.length).put(entry);
+            index.put(cacheKey, location);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //the record stays in its slab until the slab is reused
+    @Override
+    public void evict(String cacheKey) {
+        index.remove(cacheKey);
+    }
+
+    @Override
+    public long evictAuthority(String attributeAuthorityId) {
+        long evicted = 0;
+        for (String cacheKey : index.keySet()) {
+            if (attributeAuthorityId.equals(CacheKeyBuilder.attributeAuthorityId(cacheKey)) && index.remove(cacheKey) != null) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long entryCount() {
+        return index.size();
+    }
+
+    //the bytes in use by the slabs, including the replaced and expired records that are not yet evicted
+    @Override
+    public long estimatedBytes() {
+        appendLock.lock();
+        try {
+            long bytes = 0;
+            for (ByteBuffer slab : slabs) {
+                bytes += slab == null ? 0 : slab.position();
+            }
+            return bytes;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //only called while holding the append lock
+    private ByteBuffer slab(int i) {
+        if (slabs[i] == null) {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+        return slabs[i];
+    }
+
+    //only called while holding the append lock, removes the index entries of the records in the slab and empties it.
+    //The slab is not written to until it is emptied, so gets can read it during the scan.
+    private void evict(int i, ByteBuffer slab) {
+        int evicted = 0;
+        ByteBuffer records = slab.duplicate();
+        records.flip();
+        while (records.remaining() >= HEADER) {
+            long location = location(i, records.position());
+            byte[] key = new byte[records.getInt()];
+            records.get(key);
+            int entryLength = records.getInt();
+            records.position(records.position() + entryLength);
+            //the key may have been put again in a newer slab
+            String cacheKey = new String(key, StandardCharsets.UTF_8);
+            if (index.remove(cacheKey, location)) {
+                getStatistics().recordEviction(cacheKey);
+                evicted++;
+            }
+        }
+        //wait for the gets that found a record of the slab before it was removed from the index
+        slabLocks[i].writeLock().lock();
+        try {
+            slab.clear();
+        } finally {
+            slabLocks[i].writeLock().unlock();
+        }
+        LOG.debug("Evicted {} entries from slab {}", evicted, i);
+    }
+
+    private static long location(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+}
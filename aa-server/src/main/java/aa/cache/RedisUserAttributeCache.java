@@ -0,0 +1,193 @@
+package aa.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static aa.cache.RespClient.bytes;
+
+/**
+ * Cache shared by all nodes of a cluster, stored in Redis - or any server that speaks the Redis protocol - with the
+ * binary encoding of {@link CacheEntryCodec} and the expiry of the entry as the Redis TTL.
+ * <p>
+ * A small in-process near-cache in front of Redis serves the hot keys for nearCacheDuration without a round-trip.
+ * Redis is an optimization: when it is slow or down, gets are treated as misses and puts are dropped.
+ */
+public class RedisUserAttributeCache extends AbstractUserAttributeCache {
+
+    private static final byte[] GET = bytes("GET");
+    private static final byte[] SET = bytes("SET");
+    private static final byte[] PX = bytes("PX");
+    private static final byte[] DEL = bytes("DEL");
+    private static final byte[] SCAN = bytes("SCAN");
+    private static final byte[] MATCH = bytes("MATCH");
+    private static final byte[] COUNT = bytes("COUNT");
+    private static final byte[] SCAN_COUNT = bytes("1000");
+    //a connection without a reply for this long is broken and re-established. Evicting an authority is an
+    //administrative task, its commands may take this long instead of timeoutMillis
+    private static final int READ_TIMEOUT_MILLIS = 2_000;
+
+    private final RespClient client;
+    private final String keyPrefix;
+    private final long timeoutMillis;
+    private final BoundedUserAttributeCache nearCache;
+    private final long nearCacheDuration;
+
+    /**
+     * @param timeoutMillis           how long a get waits for Redis before it is treated as a miss
+     * @param nearCacheEntries        the maximum number of entries in the near-cache, zero disables the near-cache
+     * @param nearCacheDurationMillis how long an entry from Redis is served from the near-cache
+     */
+    public RedisUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                   long negativeCacheDurationMilliseconds, String host, int port, String password,
+                                   String keyPrefix, int timeoutMillis, int nearCacheEntries, long nearCacheDurationMillis) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        this.client = new RespClient(host, port, password, timeoutMillis, READ_TIMEOUT_MILLIS);
+        this.keyPrefix = keyPrefix;
+        this.timeoutMillis = timeoutMillis;
+        this.nearCacheDuration = nearCacheDurationMillis;
+        this.nearCache = nearCacheEntries > 0 && nearCacheDurationMillis > 0 ?
+            new BoundedUserAttributeCache(nearCacheDurationMillis, 0, 0, nearCacheEntries,
+                BoundedUserAttributeCache.ENTRIES, nearCacheEntries, Math.max(1000, nearCacheDurationMillis)) : null;
+    }
+
+    @Override
+    protected CacheEntry doGet(String cacheKey) {
+        long now = System.currentTimeMillis();
+        if (nearCache != null) {
+            CacheEntry cacheEntry = nearCache.doGet(cacheKey);
+            if (cacheEntry != null && !cacheEntry.isExpired(now)) {
+                return cacheEntry;
+            }
+        }
+        if (!client.isConnected()) {
+            //reconnecting in the background
+            return null;
+        }
+        try {
+            byte[] value = (byte[]) client.send(GET, bytes(keyPrefix + cacheKey)).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (value == null) {
+                return null;
+            }
+            CacheEntry cacheEntry = CacheEntryCodec.decode(value);
+            putInNearCache(cacheKey, cacheEntry, now);
+            return cacheEntry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException | IOException | ClassCastException e) {
+            LOG.warn("Get of {} from Redis failed: {}", cacheKey, e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) {
+        long now = System.currentTimeMillis();
+        long ttl = cacheEntry.getExpiresAt() - now;
+        if (ttl <= 0) {
+            return;
+        }
+        putInNearCache(cacheKey, cacheEntry, now);
+        if (!client.isConnected()) {
+            return;
+        }
+        client.send(SET, bytes(keyPrefix + cacheKey), CacheEntryCodec.encode(cacheEntry), PX, bytes(Long.toString(ttl)))
+            .whenComplete((reply, t) -> {
+                if (t != null) {
+                    LOG.warn("Put of {} in Redis failed: {}", cacheKey, t.toString());
+                }
+            });
+    }
+
+    //the near-caches of the other nodes keep their copy for at most nearCacheDuration
+    @Override
+    public void evict(String cacheKey) {
+        if (nearCache != null) {
+            nearCache.evict(cacheKey);
+        }
+        client.send(DEL, bytes(keyPrefix + cacheKey))
+            .whenComplete((reply, t) -> {
+                if (t != null) {
+                    LOG.warn("Evict of {} from Redis failed: {}", cacheKey, t.toString());
+                }
+            });
+    }
+
+    /**
+     * Deletes the keys of the authority page by page with SCAN, which iterates the whole keyspace without blocking
+     * Redis. Keys of an authority whose id starts with the id of this authority and a dash also match the pattern
+     * and are filtered out.
+     */
+    @Override
+    public long evictAuthority(String attributeAuthorityId) throws IOException {
+        if (nearCache != null) {
+            nearCache.evictAuthority(attributeAuthorityId);
+        }
+        byte[] pattern = bytes(escapeGlob(keyPrefix + attributeAuthorityId) + "-*");
+        long evicted = 0;
+        String cursor = "0";
+        try {
+            do {
+                Object[] reply = (Object[]) client.send(SCAN, bytes(cursor), MATCH, pattern, COUNT, SCAN_COUNT)
+                    .get(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                cursor = string(reply[0]);
+                List<byte[]> command = new ArrayList<>();
+                command.add(DEL);
+                for (Object key : (Object[]) reply[1]) {
+                    String cacheKey = string(key).substring(keyPrefix.length());
+                    if (attributeAuthorityId.equals(CacheKeyBuilder.attributeAuthorityId(cacheKey))) {
+                        command.add((byte[]) key);
+                    }
+                }
+                if (command.size() > 1) {
+                    evicted += (Long) client.send(command.toArray(new byte[0][]))
+                        .get(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } while (!"0".equals(cursor));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evicting authority " + attributeAuthorityId, e);
+        } catch (ExecutionException | TimeoutException | ClassCastException e) {
+            throw new IOException("Evict of authority " + attributeAuthorityId + " from Redis failed", e);
+        }
+        LOG.debug("Evicted {} keys of authority {} from Redis", evicted, attributeAuthorityId);
+        return evicted;
+    }
+
+    @Override
+    public void shutdown() {
+        client.close();
+        if (nearCache != null) {
+            nearCache.shutdown();
+        }
+    }
+
+    //the copy in the near-cache expires after nearCacheDuration, so changes by other nodes are picked up
+    private void putInNearCache(String cacheKey, CacheEntry cacheEntry, long now) {
+        if (nearCache != null) {
+            long expiresAt = Math.min(cacheEntry.getExpiresAt(), now + nearCacheDuration);
+            nearCache.doPut(cacheKey, new CacheEntry(cacheEntry.getUserAttributes(),
+                Math.min(cacheEntry.getStaleAt(), expiresAt), expiresAt));
+        }
+    }
+
+    private static String string(Object reply) {
+        return reply instanceof byte[] ? new String((byte[]) reply, StandardCharsets.UTF_8) : String.valueOf(reply);
+    }
+
+    private static String escapeGlob(String s) {
+        StringBuilder escaped = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
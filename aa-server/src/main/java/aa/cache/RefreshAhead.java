@@ -0,0 +1,134 @@
+package aa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Refreshes the cache entries of frequent users shortly before they become stale, so these users do not wait for
+ * the authorities when their entry expires. The number of recent cache hits per key is estimated with a
+ * {@link FrequencySketch}; on a hit of a key with at least minimumHits the refresh - a replay of the original call
+ * to the authority - is scheduled refreshAheadMilliseconds before the entry becomes stale.
+ * <p>
+ * Hits within refreshAheadMilliseconds of becoming stale start the refresh right away. A scheduled refresh runs once,
+ * the key is only scheduled again on the next hit, so users that stop logging in are no longer refreshed.
+ */
+public class RefreshAhead {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshAhead.class);
+
+    public static final RefreshAhead DISABLED = new RefreshAhead(0, 0, 0, 0);
+
+    private final long refreshAheadMilliseconds;
+    private final int minimumHits;
+    private final int maximumEntries;
+    private final FrequencySketch sketch;
+    private final Map<String, Runnable> scheduled = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final TimerWheel<String> timerWheel;
+    private final ScheduledExecutorService refresher;
+
+    /**
+     * @param refreshAheadMilliseconds how long before an entry becomes stale it is refreshed, zero or less disables
+     *                                 refresh-ahead
+     * @param minimumHits              the number of recent hits of a key before it is refreshed ahead
+     * @param maximumEntries           the maximum number of scheduled refreshes, each holds the input of the call
+     * @param period                   how often the scheduled refreshes that are due are started
+     */
+    public RefreshAhead(long refreshAheadMilliseconds, int minimumHits, int maximumEntries, long period) {
+        this(refreshAheadMilliseconds, minimumHits, maximumEntries, period, System::currentTimeMillis);
+    }
+
+    RefreshAhead(long refreshAheadMilliseconds, int minimumHits, int maximumEntries, long period, LongSupplier clock) {
+        this.clock = clock;
+        this.timerWheel = new TimerWheel<>(clock.getAsLong());
+        this.refreshAheadMilliseconds = refreshAheadMilliseconds;
+        this.minimumHits = minimumHits;
+        this.maximumEntries = maximumEntries;
+        this.sketch = new FrequencySketch(isEnabled() ? maximumEntries : 0);
+        if (isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("aggregate-cache-refresher-");
+            threadFactory.setDaemon(true);
+            this.refresher = newSingleThreadScheduledExecutor(threadFactory);
+            this.refresher.scheduleAtFixedRate(this::refreshDue, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return refreshAheadMilliseconds > 0 && maximumEntries > 0;
+    }
+
+    /**
+     * Records a hit of a fresh entry and schedules its refresh if the key is hot.
+     *
+     * @param refresh replays the call to the authority and puts the result in the cache, must not block
+     */
+    public void onHit(String cacheKey, CacheEntry cacheEntry, Runnable refresh) {
+        if (!isEnabled()) {
+            return;
+        }
+        int frequency;
+        synchronized (sketch) {
+            sketch.increment(cacheKey);
+            frequency = sketch.frequency(cacheKey);
+        }
+        if (frequency < minimumHits || scheduled.size() >= maximumEntries) {
+            return;
+        }
+        long refreshAt = cacheEntry.getStaleAt() - refreshAheadMilliseconds;
+        if (refreshAt <= clock.getAsLong()) {
+            //the hit is within the refresh-ahead window
+            run(cacheKey, refresh);
+        } else if (scheduled.putIfAbsent(cacheKey, refresh) == null) {
+            synchronized (timerWheel) {
+                timerWheel.schedule(cacheKey, refreshAt);
+            }
+        }
+    }
+
+    public int size() {
+        return scheduled.size();
+    }
+
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    void refreshDue() {
+        List<String> due = new ArrayList<>();
+        synchronized (timerWheel) {
+            timerWheel.advance(clock.getAsLong(), due::add);
+        }
+        due.forEach(cacheKey -> {
+            Runnable refresh = scheduled.remove(cacheKey);
+            if (refresh != null) {
+                run(cacheKey, refresh);
+            }
+        });
+        if (!due.isEmpty()) {
+            LOG.debug("Started refresh ahead of {} entries", due.size());
+        }
+    }
+
+    private void run(String cacheKey, Runnable refresh) {
+        try {
+            refresh.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Refresh ahead of {} failed: {}", cacheKey, e.toString());
+        }
+    }
+}
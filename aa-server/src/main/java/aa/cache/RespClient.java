@@ -0,0 +1,377 @@
+package aa.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Minimal client for the Redis serialization protocol (RESP). All threads share one connection: commands are written
+ * without waiting for the replies of earlier commands and a reader thread completes the futures in the order the
+ * commands were sent, so concurrent gets and puts are pipelined.
+ * <p>
+ * Callers never wait for Redis longer than timeoutMillis: a command that can not get the write lock in time fails,
+ * and while there is no connection commands fail right away. A broken connection fails the commands in flight and
+ * is re-established by a single background thread with exponential backoff. The reader times out after
+ * readTimeoutMillis without a reply to a pending command, which breaks the connection to a hanging server.
+ */
+class RespClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RespClient.class);
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int timeoutMillis;
+    private final int readTimeoutMillis;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    private final ScheduledExecutorService connector;
+    private volatile Connection connection;
+    private volatile boolean closed;
+    private long backoffMillis = MIN_BACKOFF_MILLIS;
+
+    /**
+     * @param timeoutMillis     the connect timeout and the maximum time a command waits for the write lock
+     * @param readTimeoutMillis the maximum time without a reply while commands are pending
+     */
+    RespClient(String host, int port, String password, int timeoutMillis, int readTimeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("resp-connector-");
+        threadFactory.setDaemon(true);
+        this.connector = newSingleThreadScheduledExecutor(threadFactory);
+        //the first attempt is made on the calling thread, so the cache works right after startup
+        reconnecting.set(true);
+        reconnect();
+    }
+
+    /**
+     * @return the reply: a String, Long, byte[], Object[] or null. An error reply completes the future exceptionally
+     */
+    CompletableFuture<Object> send(byte[]... command) {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        Connection current = connection;
+        if (closed) {
+            reply.completeExceptionally(new IOException("RespClient is closed"));
+            return reply;
+        }
+        if (current == null || current.broken) {
+            scheduleReconnect();
+            reply.completeExceptionally(new IOException("Not connected to " + host + ":" + port));
+            return reply;
+        }
+        try {
+            if (!writeLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                reply.completeExceptionally(new TimeoutException("Timeout waiting for the connection to " + host + ":" + port));
+                return reply;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply.completeExceptionally(e);
+            return reply;
+        }
+        try {
+            current.send(command, reply);
+        } catch (IOException e) {
+            current.close(e);
+            reply.completeExceptionally(e);
+            scheduleReconnect();
+        } finally {
+            writeLock.unlock();
+        }
+        return reply;
+    }
+
+    boolean isConnected() {
+        Connection current = connection;
+        return current != null && !current.broken;
+    }
+
+    void close() {
+        closed = true;
+        connector.shutdownNow();
+        Connection current = connection;
+        if (current != null) {
+            current.close(new IOException("RespClient is closed"));
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (!closed && reconnecting.compareAndSet(false, true)) {
+            try {
+                connector.schedule(this::reconnect, backoffMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                //closed concurrently
+            }
+        }
+    }
+
+    //only runs on one thread at a time, guarded by reconnecting
+    private void reconnect() {
+        try {
+            Connection newConnection = connect();
+            if (closed) {
+                newConnection.close(new IOException("RespClient is closed"));
+                return;
+            }
+            connection = newConnection;
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            reconnecting.set(false);
+        } catch (IOException e) {
+            LOG.warn("Connecting to {}:{} failed, retrying in {} ms: {}", host, port, backoffMillis, e.toString());
+            long delay = backoffMillis;
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+            try {
+                connector.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ree) {
+                //closed
+            }
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMillis);
+            Connection newConnection = new Connection(socket);
+            if (StringUtils.hasText(password)) {
+                newConnection.authenticate(password);
+            }
+            newConnection.start(this::scheduleReconnect);
+            LOG.info("Connected to {}:{}", host, port);
+            return newConnection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+        private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        private volatile boolean broken;
+        private Runnable onClose;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        }
+
+        private void authenticate(String password) throws IOException {
+            write(new byte[][]{bytes("AUTH"), bytes(password)});
+            out.flush();
+            Object reply = read();
+            if (reply instanceof RespException) {
+                throw (RespException) reply;
+            }
+        }
+
+        private void start(Runnable onClose) {
+            this.onClose = onClose;
+            Thread reader = new Thread(this::readReplies, "resp-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        //called while holding the write lock of the client, so the order of pending matches the order on the wire
+        private void send(byte[][] command, CompletableFuture<Object> reply) throws IOException {
+            pending.add(new Pending(reply, System.currentTimeMillis()));
+            write(command);
+            out.flush();
+        }
+
+        private void readReplies() {
+            try {
+                while (!broken) {
+                    if (!awaitReply()) {
+                        continue;
+                    }
+                    Object reply = read();
+                    Pending next = pending.poll();
+                    if (next == null) {
+                        throw new IOException("Reply without command");
+                    }
+                    CompletableFuture<Object> future = next.reply;
+                    if (reply instanceof RespException) {
+                        future.completeExceptionally((RespException) reply);
+                    } else {
+                        future.complete(reply);
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        //an idle connection times out on every read, that is only a problem when a command waits for its reply
+        private boolean awaitReply() throws IOException {
+            in.mark(1);
+            try {
+                if (in.read() == -1) {
+                    throw new EOFException("Connection closed by server");
+                }
+            } catch (SocketTimeoutException e) {
+                Pending oldest = pending.peek();
+                if (oldest == null || System.currentTimeMillis() - oldest.sentAt < socket.getSoTimeout()) {
+                    return false;
+                }
+                throw e;
+            }
+            in.reset();
+            return true;
+        }
+
+        private void close(IOException cause) {
+            if (!broken) {
+                LOG.warn("Closing connection to {}: {}", socket.getRemoteSocketAddress(), cause.toString());
+            }
+            broken = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //ignore
+            }
+            Pending next;
+            while ((next = pending.poll()) != null) {
+                next.reply.completeExceptionally(cause);
+            }
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+
+        private void write(byte[][] command) throws IOException {
+            out.write('*');
+            out.write(bytes(Integer.toString(command.length)));
+            out.write(CRLF);
+            for (byte[] argument : command) {
+                out.write('$');
+                out.write(bytes(Integer.toString(argument.length)));
+                out.write(CRLF);
+                out.write(argument);
+                out.write(CRLF);
+            }
+        }
+
+        private Object read() throws IOException {
+            int type = in.read();
+            switch (type) {
+                case -1:
+                    throw new EOFException("Connection closed by server");
+                case '+':
+                    return readLine();
+                case '-':
+                    return new RespException(readLine());
+                case ':':
+                    return Long.parseLong(readLine());
+                case '$': {
+                    int length = Integer.parseInt(readLine());
+                    if (length < 0) {
+                        return null;
+                    }
+                    byte[] bulk = readFully(length);
+                    readFully(2);
+                    return bulk;
+                }
+                case '*': {
+                    int length = Integer.parseInt(readLine());
+                    if (length < 0) {
+                        return null;
+                    }
+                    Object[] array = new Object[length];
+                    for (int i = 0; i < length; i++) {
+                        array[i] = read();
+                    }
+                    return array;
+                }
+                default:
+                    throw new IOException("Unexpected RESP type " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c == -1) {
+                    throw new EOFException("Connection closed by server");
+                }
+                line.append((char) c);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read == -1) {
+                    throw new EOFException("Connection closed by server");
+                }
+                offset += read;
+            }
+            return bytes;
+        }
+    }
+
+    private static class Pending {
+
+        private final CompletableFuture<Object> reply;
+        private final long sentAt;
+
+        private Pending(CompletableFuture<Object> reply, long sentAt) {
+            this.reply = reply;
+            this.sentAt = sentAt;
+        }
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static class RespException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        RespException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,63 +1,125 @@
 package aa.cache;
 
-import aa.model.UserAttribute;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
-import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 /**
  * Do not use in clustered environment when accessing the Attribute Aggregator through
  * a load balancer.
+ * <p>
+ * Expired entries are removed with a {@link TimerWheel}, so the periodic cleanup only touches the entries that are
+ * due instead of the whole map. Puts and removals do not lock the wheel, they only queue the key; the cleaner drains
+ * the queue and (re)schedules the keys with the entry that is in the map at that moment.
  */
 public class SimpleInMemoryUserAttributeCache extends AbstractUserAttributeCache {
 
-    private final Map<String, CachedAggregate> cache = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    //only touched in clearExpiredAggregates
+    private final TimerWheel<String> timerWheel = new TimerWheel<>(System.currentTimeMillis());
+    //keys that were put or removed since the last cleanup
+    private final Queue<String> changedKeys = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService cleaner;
 
     public SimpleInMemoryUserAttributeCache(long cacheDurationMilliseconds, long clearExpiredAggregatesPeriod) {
-        super(cacheDurationMilliseconds);
-        if (cacheDurationMilliseconds > 0) {
-            newScheduledThreadPool(1).scheduleAtFixedRate(this::clearExpiredAggregates, 0, clearExpiredAggregatesPeriod, TimeUnit.MILLISECONDS);
-        }
+        this(cacheDurationMilliseconds, 0, clearExpiredAggregatesPeriod);
+    }
+
+    public SimpleInMemoryUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                            long clearExpiredAggregatesPeriod) {
+        this(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, 0, clearExpiredAggregatesPeriod);
+    }
+
+    public SimpleInMemoryUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                            long negativeCacheDurationMilliseconds, long clearExpiredAggregatesPeriod) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        //also without a positive cacheDuration, authorities can configure their own
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("aggregate-cache-cleaner-");
+        threadFactory.setDaemon(true);
+        cleaner = newSingleThreadScheduledExecutor(threadFactory);
+        cleaner.scheduleAtFixedRate(this::clearExpiredAggregates, clearExpiredAggregatesPeriod,
+            clearExpiredAggregatesPeriod, TimeUnit.MILLISECONDS);
     }
 
     @Override
-    protected List<UserAttribute> doGet(String cacheKey) {
-        CachedAggregate cachedAggregate = cache.get(cacheKey);
-        long now = System.currentTimeMillis();
-        if (cachedAggregate != null && cachedAggregate.timestamp + getCacheDuration() > now) {
-            return cachedAggregate.aggregate;
-        }
-        return null;
+    protected CacheEntry doGet(String cacheKey) {
+        return cache.get(cacheKey);
     }
 
     @Override
-    protected void doPut(String cacheKey, List<UserAttribute> userAttributes) {
-        long now = System.currentTimeMillis();
-        cache.put(cacheKey, new CachedAggregate(now, userAttributes));
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) {
+        cache.put(cacheKey, cacheEntry);
+        changedKeys.add(cacheKey);
     }
 
-    private void clearExpiredAggregates() {
-        long now = System.currentTimeMillis();
-        long cacheDuration = getCacheDuration();
-        cache.forEach((key, aggregate) -> {
-            if (aggregate.timestamp + cacheDuration < now) {
-                LOG.debug("Removing expired aggregation with key {}", key);
-                cache.remove(key);
+    @Override
+    public void evict(String cacheKey) {
+        remove(cacheKey);
+    }
+
+    @Override
+    public long evictAuthority(String attributeAuthorityId) {
+        long evicted = 0;
+        for (String cacheKey : cache.keySet()) {
+            if (attributeAuthorityId.equals(CacheKeyBuilder.attributeAuthorityId(cacheKey)) && remove(cacheKey)) {
+                evicted++;
             }
-        });
+        }
+        return evicted;
     }
 
-    private class CachedAggregate {
-        long timestamp;
-        List<UserAttribute> aggregate;
+    private boolean remove(String cacheKey) {
+        boolean removed = cache.remove(cacheKey) != null;
+        changedKeys.add(cacheKey);
+        return removed;
+    }
+
+    @Override
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public long entryCount() {
+        return cache.size();
+    }
 
-        public CachedAggregate(long timestamp, List<UserAttribute> aggregate) {
-            this.timestamp = timestamp;
-            this.aggregate = aggregate;
+    //visits all entries
+    @Override
+    public long estimatedBytes() {
+        return cache.values().stream().mapToLong(BoundedUserAttributeCache::estimateBytes).sum();
+    }
+
+    void clearExpiredAggregates() {
+        long now = System.currentTimeMillis();
+        synchronized (timerWheel) {
+            for (String key = changedKeys.poll(); key != null; key = changedKeys.poll()) {
+                CacheEntry cacheEntry = cache.get(key);
+                if (cacheEntry == null) {
+                    timerWheel.cancel(key);
+                } else {
+                    timerWheel.schedule(key, cacheEntry.getExpiresAt());
+                }
+            }
+            timerWheel.advance(now, key -> {
+                //the entry may have been removed or replaced after the timer fired
+                CacheEntry cacheEntry = cache.get(key);
+                if (cacheEntry != null && cacheEntry.isExpired(now) && cache.remove(key, cacheEntry)) {
+                    getStatistics().recordExpiry(key);
+                    LOG.debug("Removed expired aggregation with key {}", key);
+                }
+            });
         }
     }
 }
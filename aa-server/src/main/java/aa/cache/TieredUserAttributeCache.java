@@ -0,0 +1,90 @@
+package aa.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+
+/**
+ * Two level cache: a fast - usually in-memory - first tier in front of a shared second tier. Puts go to both tiers and
+ * entries found in the second tier are copied to the first tier. The copy in the first tier is kept for at most
+ * firstTierDuration, so evictions - and puts - by other nodes are picked up after that.
+ * <p>
+ * The TTLs of this cache apply; the durations of the tiers themselves are not used. The tiers report their evictions
+ * and expiries to the statistics of this cache.
+ */
+public class TieredUserAttributeCache extends AbstractUserAttributeCache {
+
+    private final AbstractUserAttributeCache firstTier;
+    private final AbstractUserAttributeCache secondTier;
+    private final long firstTierDuration;
+
+    /**
+     * @param firstTierDurationMillis how long an entry is served from the first tier without checking the second tier
+     */
+    public TieredUserAttributeCache(long cacheDurationMilliseconds, long staleWhileRevalidateMilliseconds,
+                                    long negativeCacheDurationMilliseconds, AbstractUserAttributeCache firstTier,
+                                    AbstractUserAttributeCache secondTier, long firstTierDurationMillis) {
+        super(cacheDurationMilliseconds, staleWhileRevalidateMilliseconds, negativeCacheDurationMilliseconds);
+        this.firstTier = firstTier;
+        this.secondTier = secondTier;
+        this.firstTierDuration = firstTierDurationMillis;
+        firstTier.setStatistics(getStatistics());
+        secondTier.setStatistics(getStatistics());
+    }
+
+    @Override
+    protected CacheEntry doGet(String cacheKey) throws IOException {
+        long now = System.currentTimeMillis();
+        CacheEntry cacheEntry = firstTier.doGet(cacheKey);
+        if (cacheEntry != null && !cacheEntry.isExpired(now)) {
+            return cacheEntry;
+        }
+        cacheEntry = secondTier.doGet(cacheKey);
+        if (cacheEntry != null && !cacheEntry.isExpired(now)) {
+            putInFirstTier(cacheKey, cacheEntry, now);
+        }
+        return cacheEntry;
+    }
+
+    @Override
+    protected void doPut(String cacheKey, CacheEntry cacheEntry) throws JsonProcessingException {
+        putInFirstTier(cacheKey, cacheEntry, System.currentTimeMillis());
+        secondTier.doPut(cacheKey, cacheEntry);
+    }
+
+    @Override
+    public void evict(String cacheKey) throws IOException {
+        firstTier.evict(cacheKey);
+        secondTier.evict(cacheKey);
+    }
+
+    //the first tier of the other nodes keeps its copies for at most firstTierDuration
+    @Override
+    public long evictAuthority(String attributeAuthorityId) throws IOException {
+        firstTier.evictAuthority(attributeAuthorityId);
+        return secondTier.evictAuthority(attributeAuthorityId);
+    }
+
+    //the second tier has all entries
+    @Override
+    public long entryCount() {
+        return secondTier.entryCount();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return secondTier.estimatedBytes();
+    }
+
+    @Override
+    public void shutdown() {
+        firstTier.shutdown();
+        secondTier.shutdown();
+    }
+
+    private void putInFirstTier(String cacheKey, CacheEntry cacheEntry, long now) throws JsonProcessingException {
+        long expiresAt = Math.min(cacheEntry.getExpiresAt(), now + firstTierDuration);
+        firstTier.doPut(cacheKey, new CacheEntry(cacheEntry.getUserAttributes(),
+            Math.min(cacheEntry.getStaleAt(), expiresAt), expiresAt));
+    }
+}
@@ -0,0 +1,153 @@
+package aa.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel that tracks when the keys of a cache expire. The levels have buckets of about a second,
+ * a minute, an hour and eighteen hours, plus one overflow bucket. When time advances only the buckets that have passed
+ * are visited; keys that are not yet due cascade to a bucket of a lower level. Every key moves at most once per
+ * level, so scheduling and expiring are amortized O(1).
+ * <p>
+ * Not thread-safe, callers must synchronize.
+ */
+class TimerWheel<K> {
+
+    private static final int[] BUCKETS = {64, 64, 16, 16, 1};
+    private static final int[] SHIFTS = {10, 16, 22, 26, 30};
+    private static final long[] SPANS = {1L << 10, 1L << 16, 1L << 22, 1L << 26, 1L << 30, Long.MAX_VALUE};
+
+    //per level the sentinels of its buckets
+    private final List<List<Timer<K>>> wheel;
+    private final Map<K, Timer<K>> timers = new HashMap<>();
+    private long time;
+
+    TimerWheel(long now) {
+        this.time = now;
+        this.wheel = new ArrayList<>(BUCKETS.length);
+        for (int bucketCount : BUCKETS) {
+            List<Timer<K>> buckets = new ArrayList<>(bucketCount);
+            for (int j = 0; j < bucketCount; j++) {
+                buckets.add(new Timer<>(null, 0));
+            }
+            wheel.add(buckets);
+        }
+    }
+
+    /**
+     * Schedules the key to expire at the given time, replacing an earlier schedule of the key.
+     */
+    void schedule(K key, long expiresAt) {
+        Timer<K> timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer<>(key, expiresAt);
+            timers.put(key, timer);
+        } else {
+            timer.unlink();
+            timer.expiresAt = expiresAt;
+        }
+        link(timer);
+    }
+
+    void cancel(K key) {
+        Timer<K> timer = timers.remove(key);
+        if (timer != null) {
+            timer.unlink();
+        }
+    }
+
+    int size() {
+        return timers.size();
+    }
+
+    /**
+     * Moves the time forward and hands every key that expired in the meantime to the consumer.
+     */
+    void advance(long now, Consumer<K> expired) {
+        long previous = time;
+        if (now <= previous) {
+            return;
+        }
+        time = now;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks <= previousTicks) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks, expired);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long currentTicks, Consumer<K> expired) {
+        List<Timer<K>> buckets = wheel.get(level);
+        int mask = buckets.size() - 1;
+        int steps = (int) Math.min(1 + currentTicks - previousTicks, buckets.size());
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Timer<K> sentinel = buckets.get(i & mask);
+            Timer<K> timer = sentinel.next;
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+            while (timer != sentinel) {
+                Timer<K> next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                if (timer.expiresAt <= time) {
+                    timers.remove(timer.key);
+                    expired.accept(timer.key);
+                } else {
+                    link(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    private void link(Timer<K> timer) {
+        Timer<K> sentinel = bucket(timer.expiresAt);
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+    }
+
+    private Timer<K> bucket(long expiresAt) {
+        //keys that are already due go to the current bucket, which is visited on the next advance
+        long at = Math.max(expiresAt, time);
+        long duration = at - time;
+        int last = BUCKETS.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = at >>> SHIFTS[i];
+                return wheel.get(i).get((int) (ticks & (BUCKETS[i] - 1)));
+            }
+        }
+        return wheel.get(last).get(0);
+    }
+
+    private static class Timer<K> {
+
+        private final K key;
+        private long expiresAt;
+        private Timer<K> previous = this;
+        private Timer<K> next = this;
+
+        private Timer(K key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        private void unlink() {
+            if (previous != null) {
+                previous.next = next;
+                next.previous = previous;
+                previous = null;
+                next = null;
+            }
+        }
+    }
+}
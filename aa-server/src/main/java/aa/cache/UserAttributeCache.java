@@ -10,5 +10,64 @@ public interface UserAttributeCache {
 
     Optional<List<UserAttribute>> get(Optional<String> cacheKey) throws IOException;
 
+    /**
+     * @return the entry for the key - which may be stale - unless it is expired
+     */
+    default Optional<CacheEntry> getEntry(Optional<String> cacheKey) throws IOException {
+        return get(cacheKey).map(userAttributes -> new CacheEntry(userAttributes, Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
     void put(Optional<String> cacheKey, List<UserAttribute> userAttributes) throws IOException;
+
+    /**
+     * @param userAttributes the result of a successful call to the authority, empty if the authority has nothing
+     *                       for the user. Failed calls must never be put in the cache.
+     */
+    default void put(Optional<String> cacheKey, List<UserAttribute> userAttributes, CachePolicy cachePolicy) throws IOException {
+        put(cacheKey, userAttributes);
+    }
+
+    /**
+     * Removes the entry for the key, e.g. because the data of the user at the authority has changed.
+     */
+    void evict(String cacheKey) throws IOException;
+
+    /**
+     * Removes all entries of the authority, e.g. after a change of its configuration or data.
+     *
+     * @return the number of removed entries or -1 if the cache can not tell
+     */
+    long evictAuthority(String attributeAuthorityId) throws IOException;
+
+    /**
+     * @return the counters per authority of this cache
+     */
+    CacheStatistics getStatistics();
+
+    /**
+     * @return the number of entries or -1 if the cache can not tell
+     */
+    default long entryCount() {
+        return -1;
+    }
+
+    /**
+     * @return the estimated size of the entries in bytes or -1 if the cache can not tell
+     */
+    default long estimatedBytes() {
+        return -1;
+    }
+
+    /**
+     * For debugging: the entry for the key, also when it is expired, without counting the lookup.
+     */
+    default Optional<CacheEntry> inspect(String cacheKey) throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * Stops the background threads of the cache, called on context close.
+     */
+    default void shutdown() {
+    }
 }
@@ -1,15 +1,98 @@
 package aa.cache;
 
+import aa.config.AuthorityResolver;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @Configuration
 public class UserAttributeCacheConfiguration {
 
-    @Bean
-    public UserAttributeCache inMemoryUserAttributeCache(@Value("${aggregate_cache_duration_milliseconds}") long cacheDuration) {
-        return cacheDuration < 0 ? new NoopUserAttributeCache() : new SimpleInMemoryUserAttributeCache(cacheDuration, cacheDuration);
+    //assumed average size of an entry, used to size the frequency sketch when the cache is bounded in bytes
+    private static final int AVERAGE_ENTRY_BYTES = 512;
+    //the resolution of the timer wheel that removes expired entries
+    private static final long CLEAR_EXPIRED_PERIOD = 1000;
+
+    @Bean(destroyMethod = "shutdown")
+    public UserAttributeCache inMemoryUserAttributeCache(@Value("${aggregate_cache_duration_milliseconds}") long cacheDuration,
+                                                         @Value("${aggregate_cache_stale_while_revalidate_milliseconds}") long staleWhileRevalidate,
+                                                         @Value("${aggregate_negative_cache_duration_milliseconds}") long negativeCacheDuration,
+                                                         @Value("${aggregate_cache_backend}") String backend,
+                                                         Environment environment,
+                                                         JdbcTemplate jdbcTemplate,
+                                                         AuthorityResolver authorityResolver) {
+        if (!cacheEnabled(cacheDuration, negativeCacheDuration, authorityResolver)) {
+            return new NoopUserAttributeCache();
+        }
+        switch (backend) {
+            case "memory":
+                return memoryCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration, environment);
+            case "redis":
+                return new RedisUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+                    environment.getRequiredProperty("aggregate_cache_redis.host"),
+                    environment.getRequiredProperty("aggregate_cache_redis.port", Integer.class),
+                    environment.getProperty("aggregate_cache_redis.password"),
+                    environment.getRequiredProperty("aggregate_cache_redis.key_prefix"),
+                    environment.getRequiredProperty("aggregate_cache_redis.timeout_milliseconds", Integer.class),
+                    environment.getRequiredProperty("aggregate_cache_redis.near_cache_entries", Integer.class),
+                    environment.getRequiredProperty("aggregate_cache_redis.near_cache_duration_milliseconds", Long.class));
+            case "offheap":
+                return new OffHeapUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+                    environment.getRequiredProperty("aggregate_cache_offheap.slab_count", Integer.class),
+                    environment.getRequiredProperty("aggregate_cache_offheap.slab_size_bytes", Integer.class));
+            case "jdbc":
+                //the node responsible for the cron jobs deletes the expired rows
+                long clearExpiredPeriod = environment.getRequiredProperty("cron_job_responsible", Boolean.class) ?
+                    environment.getRequiredProperty("aggregate_cache_jdbc.clear_expired_period_milliseconds", Long.class) : -1;
+                return new TieredUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+                    memoryCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration, environment),
+                    new JdbcUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration, jdbcTemplate,
+                        clearExpiredPeriod, environment.getRequiredProperty("aggregate_cache_jdbc.delete_batch_size", Integer.class)),
+                    environment.getRequiredProperty("aggregate_cache_jdbc.first_tier_duration_milliseconds", Long.class));
+            default:
+                throw new IllegalArgumentException("Unknown aggregate_cache_backend " + backend);
+        }
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public RefreshAhead refreshAhead(@Value("${aggregate_cache_duration_milliseconds}") long cacheDuration,
+                                     @Value("${aggregate_negative_cache_duration_milliseconds}") long negativeCacheDuration,
+                                     @Value("${aggregate_cache_refresh_ahead.milliseconds}") long refreshAheadMilliseconds,
+                                     @Value("${aggregate_cache_refresh_ahead.minimum_hits}") int minimumHits,
+                                     @Value("${aggregate_cache_refresh_ahead.maximum_entries}") int maximumEntries,
+                                     AuthorityResolver authorityResolver) {
+        return !cacheEnabled(cacheDuration, negativeCacheDuration, authorityResolver) ? RefreshAhead.DISABLED :
+            new RefreshAhead(refreshAheadMilliseconds, minimumHits, maximumEntries, CLEAR_EXPIRED_PERIOD);
+    }
+
+    /*
+     * The cache is needed when the defaults cache anything or when an authority overrides them with its own cache
+     * policy, e.g. only caching a slow authority while aggregate_cache_duration_milliseconds is -1.
+     */
+    static boolean cacheEnabled(long cacheDuration, long negativeCacheDuration, AuthorityResolver authorityResolver) {
+        return cacheDuration > 0 || negativeCacheDuration > 0 || authorityResolver.getConfiguration().getAuthorities()
+            .stream()
+            .filter(authority -> !authority.isNoCache())
+            .anyMatch(authority -> authority.getCacheDurationMilliseconds() > 0 ||
+                authority.getNegativeCacheDurationMilliseconds() > 0);
+    }
+
+    private AbstractUserAttributeCache memoryCache(long cacheDuration, long staleWhileRevalidate,
+                                                   long negativeCacheDuration, Environment environment) {
+        long maximumEntries = environment.getRequiredProperty("aggregate_cache_maximum_entries", Long.class);
+        long maximumBytes = environment.getRequiredProperty("aggregate_cache_maximum_bytes", Long.class);
+        if (maximumBytes > 0) {
+            return new BoundedUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+                maximumBytes, BoundedUserAttributeCache.BYTES, maximumBytes / AVERAGE_ENTRY_BYTES, CLEAR_EXPIRED_PERIOD);
+        }
+        if (maximumEntries > 0) {
+            return new BoundedUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+                maximumEntries, BoundedUserAttributeCache.ENTRIES, maximumEntries, CLEAR_EXPIRED_PERIOD);
+        }
+        return new SimpleInMemoryUserAttributeCache(cacheDuration, staleWhileRevalidate, negativeCacheDuration,
+            CLEAR_EXPIRED_PERIOD);
     }
 
 }
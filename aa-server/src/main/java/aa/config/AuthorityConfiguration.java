@@ -21,6 +21,9 @@ public class AuthorityConfiguration {
         return authorities;
     }
 
+    /**
+     * Linear lookup for configuration time, requests look up authorities in the AuthorityRegistry of the service.
+     */
     public AttributeAuthorityConfiguration getAuthorityById(String authorityId) {
         return authorities.stream().filter(authority -> authority.getId().equals(authorityId))
                 .findFirst()
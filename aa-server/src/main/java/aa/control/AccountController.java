@@ -6,6 +6,7 @@ import aa.model.AccountType;
 import aa.model.ResourceNotFoundException;
 import aa.model.UnauthorizedException;
 import aa.repository.AccountRepository;
+import aa.service.AttributeAggregatorService;
 import aa.shibboleth.FederatedUser;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.slf4j.Logger;
@@ -47,6 +48,9 @@ public class AccountController {
     @Autowired
     private AccountRepository accountRepository;
 
+    @Autowired
+    private AttributeAggregatorService attributeAggregatorService;
+
     @Value("${orcid.authorization_uri}")
     private String orcidAuthorizationUri;
 
@@ -123,6 +127,8 @@ public class AccountController {
 
         LOG.debug("Saved ORCID linked account {}", account);
 
+        attributeAggregatorService.evictNameId(account.getUrn());
+
         if (StringUtils.hasText(redirectUrl)) {
             response.sendRedirect(redirectUrl);
         } else {
@@ -144,6 +150,7 @@ public class AccountController {
                 .orElseThrow(() -> new ResourceNotFoundException(String.format("Account %s not found", id)));
         LOG.debug("Deleting account {}", account);
         accountRepository.delete(account);
+        attributeAggregatorService.evictNameId(account.getUrn());
         return ResponseEntity.ok(Collections.singletonMap("status", "OK"));
     }
 
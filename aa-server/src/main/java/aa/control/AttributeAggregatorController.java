@@ -1,31 +1,150 @@
 package aa.control;
 
+import aa.model.AggregationResult;
+import aa.model.AggregationTrailer;
 import aa.model.ArpAggregationRequest;
-import aa.model.UserAttribute;
+import aa.model.BatchAggregationRequest;
+import aa.model.SourceUserAttributes;
 import aa.service.AttributeAggregatorService;
+import aa.service.BatchAggregationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 @RestController
 @RequestMapping(headers = {"Content-Type=application/json"}, produces = {"application/json"})
 public class AttributeAggregatorController {
 
+    public static final String TIMED_OUT_SOURCES_HEADER = "X-Timed-Out-Sources";
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final List<MediaType> STREAMING_MEDIA_TYPES = Arrays.asList(
+        MediaType.parseMediaType(APPLICATION_NDJSON_VALUE), MediaType.TEXT_EVENT_STREAM);
+    private static final byte[] NDJSON_LINE_END = {'\n'};
+    private static final byte[] SSE_EVENT_END = {'\n', '\n'};
+
     private final AttributeAggregatorService attributeAggregatorService;
+    private final BatchAggregationService batchAggregationService;
+    private final ObjectWriter objectWriter;
 
     @Autowired
-    public AttributeAggregatorController(AttributeAggregatorService attributeAggregatorService) {
+    public AttributeAggregatorController(AttributeAggregatorService attributeAggregatorService,
+                                         BatchAggregationService batchAggregationService,
+                                         ObjectMapper objectMapper) {
         this.attributeAggregatorService = attributeAggregatorService;
+        this.batchAggregationService = batchAggregationService;
+        this.objectWriter = objectMapper.writer();
+    }
+
+    /**
+     * Clients that explicitly accept application/x-ndjson or text/event-stream - and prefer it over application/json -
+     * get the attributes of each authority as soon as it has answered, followed by an {@link AggregationTrailer}.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = {"/internal/attribute/aggregation", "/client/attribute/aggregation"},
+        produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public ResponseEntity<?> arpBasedAggregation(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                 @Valid @RequestBody ArpAggregationRequest arpAggregationRequest) {
+        MediaType streamingMediaType = streamingMediaType(accept);
+        if (streamingMediaType != null) {
+            return streamingArpBasedAggregation(arpAggregationRequest, streamingMediaType);
+        }
+        AggregationResult result = attributeAggregatorService.aggregateBasedOnArp(arpAggregationRequest);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (!result.getTimedOutSources().isEmpty()) {
+            builder.header(TIMED_OUT_SOURCES_HEADER, String.join(",", result.getTimedOutSources()));
+        }
+        return builder.body(result.getUserAttributes());
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamingArpBasedAggregation(ArpAggregationRequest arpAggregationRequest,
+                                                                               MediaType mediaType) {
+        boolean serverSentEvents = MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType);
+        StreamingResponseBody body = outputStream -> {
+            try {
+                AggregationResult result = attributeAggregatorService.aggregateBasedOnArp(
+                    arpAggregationRequest,
+                    attributeAggregatorService.compileArp(arpAggregationRequest.getArpAttributes()),
+                    (authorityId, userAttributes) -> write(outputStream, serverSentEvents, "attributes",
+                        new SourceUserAttributes(authorityId, userAttributes)));
+                write(outputStream, serverSentEvents, "complete",
+                    new AggregationTrailer(true, result.getTimedOutSources(), result.getFailedSources()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(serverSentEvents ? MediaType.TEXT_EVENT_STREAM : MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+            .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+            .body(body);
+    }
+
+    //the streaming media type if the client explicitly prefers it over JSON, wildcards do not count
+    private MediaType streamingMediaType(String accept) {
+        if (!StringUtils.hasText(accept)) {
+            return null;
+        }
+        List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+        MediaType.sortByQualityValue(mediaTypes);
+        return mediaTypes.stream()
+            .filter(mediaType -> !mediaType.isWildcardType() && !mediaType.isWildcardSubtype())
+            .filter(mediaType -> STREAMING_MEDIA_TYPES.stream().anyMatch(mediaType::equalsTypeAndSubtype) ||
+                MediaType.APPLICATION_JSON.equalsTypeAndSubtype(mediaType))
+            .findFirst()
+            .filter(mediaType -> !MediaType.APPLICATION_JSON.equalsTypeAndSubtype(mediaType))
+            .orElse(null);
+    }
+
+    /**
+     * Streams one JSON line per user - in order of completion - with the id of the user and the aggregated attributes.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/internal/attribute/aggregation/batch", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batchArpBasedAggregation(@Valid @RequestBody BatchAggregationRequest batchAggregationRequest) {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                batchAggregationService.aggregate(batchAggregationRequest, result -> writeLine(outputStream, result));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while aggregating batch");
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
+    private void writeLine(OutputStream outputStream, Object value) {
+        write(outputStream, false, null, value);
     }
 
-    @RequestMapping(method = RequestMethod.POST, value = {"/internal/attribute/aggregation", "/client/attribute/aggregation"})
-    public List<UserAttribute> arpBasedAggregation(@Valid @RequestBody ArpAggregationRequest arpAggregationRequest) {
-        List<UserAttribute> userAttributes = attributeAggregatorService.aggregateBasedOnArp(arpAggregationRequest);
-        return userAttributes;
+    private void write(OutputStream outputStream, boolean serverSentEvent, String event, Object value) {
+        try {
+            if (serverSentEvent) {
+                outputStream.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            }
+            outputStream.write(objectWriter.writeValueAsBytes(value));
+            outputStream.write(serverSentEvent ? SSE_EVENT_END : NDJSON_LINE_END);
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -2,20 +2,26 @@ package aa.control;
 
 import aa.config.AuthorityConfiguration;
 import aa.config.AuthorityResolver;
+import aa.service.AttributeAggregatorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping(headers = {"Content-Type=application/json"}, produces = {"application/json"})
 public class AuthorityConfigurationController {
 
     private final AuthorityConfiguration configuration;
+    private final AttributeAggregatorService attributeAggregatorService;
 
     @Autowired
-    public AuthorityConfigurationController(AuthorityResolver authorityResolver) {
+    public AuthorityConfigurationController(AuthorityResolver authorityResolver,
+                                            AttributeAggregatorService attributeAggregatorService) {
         this.configuration = authorityResolver.getConfiguration();
+        this.attributeAggregatorService = attributeAggregatorService;
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/client/authorityConfiguration")
@@ -23,4 +29,9 @@ public class AuthorityConfigurationController {
         return configuration;
     }
 
+    @RequestMapping(method = RequestMethod.GET, value = "/internal/authorityConfiguration/timeOuts")
+    public Map<String, Integer> effectiveTimeOuts() {
+        return attributeAggregatorService.effectiveTimeOuts();
+    }
+
 }
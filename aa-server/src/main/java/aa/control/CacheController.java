@@ -0,0 +1,109 @@
+package aa.control;
+
+import aa.aggregators.AttributeAggregator;
+import aa.cache.CacheEntry;
+import aa.cache.UserAttributeCache;
+import aa.model.CacheWarmRequest;
+import aa.model.ResourceNotFoundException;
+import aa.model.UserAttribute;
+import aa.service.AttributeAggregatorService;
+import aa.service.CacheWarmer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping(headers = {"Content-Type=application/json"}, produces = {"application/json"})
+public class CacheController {
+
+    private final UserAttributeCache userAttributeCache;
+    private final CacheWarmer cacheWarmer;
+    private final AttributeAggregatorService attributeAggregatorService;
+
+    @Autowired
+    public CacheController(UserAttributeCache userAttributeCache, CacheWarmer cacheWarmer,
+                           AttributeAggregatorService attributeAggregatorService) {
+        this.userAttributeCache = userAttributeCache;
+        this.cacheWarmer = cacheWarmer;
+        this.attributeAggregatorService = attributeAggregatorService;
+    }
+
+    /**
+     * The number of entries and their estimated size - -1 if the cache can not tell - and the counters per authority.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/internal/cache/statistics")
+    public Map<String, Object> statistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", userAttributeCache.entryCount());
+        result.put("estimatedBytes", userAttributeCache.estimatedBytes());
+        result.put("authorities", userAttributeCache.getStatistics().snapshot());
+        return result;
+    }
+
+    /**
+     * For debugging: the entry for the cache key - the authority id followed by the hash of the input - even when
+     * it is expired.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/internal/cache/entries/{cacheKey:.+}")
+    public CacheEntry entry(@PathVariable("cacheKey") String cacheKey) throws IOException {
+        return userAttributeCache.inspect(cacheKey)
+            .orElseThrow(() -> new ResourceNotFoundException(String.format("Cache entry %s not found", cacheKey)));
+    }
+
+    /**
+     * For debugging: the cached results of the user - identified by the value of an input attribute, default the
+     * name id - per authority, for the given authorities or all of them. The cache keys are derived from the user
+     * like the eviction of a user does, so the hashed key is not needed.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/internal/cache/users/{userId:.+}")
+    public Map<String, CacheEntry> userEntries(@PathVariable("userId") String userId,
+                                               @RequestParam(value = "attribute", defaultValue = AttributeAggregator.NAME_ID) String attribute,
+                                               @RequestParam(value = "authority", required = false) List<String> authorities) throws IOException {
+        List<UserAttribute> input = Collections.singletonList(new UserAttribute(attribute, Collections.singletonList(userId)));
+        return attributeAggregatorService.inspectUser(input, authorities == null ? Collections.emptyList() : authorities);
+    }
+
+    /**
+     * Warms the cache in the background, the progress is logged. Returns the number of users that will be warmed.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "/internal/cache/warm")
+    public ResponseEntity<Map<String, Integer>> warm(@Valid @RequestBody CacheWarmRequest cacheWarmRequest) {
+        cacheWarmer.warm(cacheWarmRequest);
+        return ResponseEntity.accepted().body(Collections.singletonMap("users", cacheWarmRequest.getUsers().size()));
+    }
+
+    /**
+     * Evicts the cached results of the user - identified by the value of an input attribute, default the name id -
+     * for the given authorities or all of them. Returns the authorities that were evicted.
+     */
+    @RequestMapping(method = RequestMethod.DELETE, value = "/internal/cache/users/{userId:.+}")
+    public Map<String, Set<String>> evictUser(@PathVariable("userId") String userId,
+                                              @RequestParam(value = "attribute", defaultValue = AttributeAggregator.NAME_ID) String attribute,
+                                              @RequestParam(value = "authority", required = false) List<String> authorities) throws IOException {
+        List<UserAttribute> input = Collections.singletonList(new UserAttribute(attribute, Collections.singletonList(userId)));
+        Set<String> evicted = attributeAggregatorService.evictUser(input,
+            authorities == null ? Collections.emptyList() : authorities);
+        return Collections.singletonMap("authorities", evicted);
+    }
+
+    /**
+     * Evicts all cached results of the authority. Returns the number of evicted entries, -1 if the cache can not tell.
+     */
+    @RequestMapping(method = RequestMethod.DELETE, value = "/internal/cache/authorities/{authorityId:.+}")
+    public Map<String, Long> evictAuthority(@PathVariable("authorityId") String authorityId) throws IOException {
+        return Collections.singletonMap("entries", attributeAggregatorService.evictAuthority(authorityId));
+    }
+}
@@ -2,11 +2,14 @@ package aa.lifecycle;
 
 import aa.model.Account;
 import aa.repository.AccountRepository;
+import aa.service.AttributeAggregatorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -26,10 +29,13 @@ public class UserLifeCycleController {
     private static final Logger LOG = LoggerFactory.getLogger(UserLifeCycleController.class);
 
     private AccountRepository accountRepository;
+    private AttributeAggregatorService attributeAggregatorService;
 
     @Autowired
-    public UserLifeCycleController(AccountRepository accountRepository) {
+    public UserLifeCycleController(AccountRepository accountRepository,
+                                   AttributeAggregatorService attributeAggregatorService) {
         this.accountRepository = accountRepository;
+        this.attributeAggregatorService = attributeAggregatorService;
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/deprovision/{userId:.+}")
@@ -70,6 +76,7 @@ public class UserLifeCycleController {
                 LOG.info("Deleting account of {} with {} linkedIn informationof type {}", userId,
                     account.getLinkedId(), account.getAccountType());
             });
+            evictAfterCommit(accounts);
         }
         result.setData(new ArrayList<>(attributes).stream()
             .filter(attr -> StringUtils.hasText(attr.getValue()))
@@ -78,4 +85,21 @@ public class UserLifeCycleController {
         return result;
     }
 
+    //evicting before the commit would let a concurrent aggregation cache the deleted accounts again. The urn is
+    //matched case-insensitive, so the cached results of the urns as stored are evicted
+    private void evictAfterCommit(List<Account> accounts) {
+        Runnable evict = () -> accounts.stream().map(Account::getUrn).distinct()
+            .forEach(attributeAggregatorService::evictNameId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        } else {
+            evict.run();
+        }
+    }
+
 }
@@ -0,0 +1,23 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Set;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class AggregationResult {
+
+    private final List<UserAttribute> userAttributes;
+
+    //the authorities that did not answer within the deadline of the request
+    private final Set<String> timedOutSources;
+
+    //the authorities that failed, had an open circuit breaker or could not be scheduled
+    private final Set<String> failedSources;
+
+}
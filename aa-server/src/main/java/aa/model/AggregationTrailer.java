@@ -0,0 +1,23 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.Set;
+
+/**
+ * The last element of a streamed aggregation response.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class AggregationTrailer {
+
+    private boolean complete;
+    private Set<String> timedOutSources;
+    private Set<String> failedSources;
+
+}
@@ -24,4 +24,11 @@ public class ArpAggregationRequest {
     @Size
     private Map<String, List<ArpValue>> arpAttributes;
 
+    //optional, overrides the global aggregate_deadline_milliseconds for this request
+    private Long deadlineMilliseconds;
+
+    public ArpAggregationRequest(List<UserAttribute> userAttributes, Map<String, List<ArpValue>> arpAttributes) {
+        this(userAttributes, arpAttributes, null);
+    }
+
 }
@@ -29,7 +29,32 @@ public class AttributeAuthorityConfiguration {
     private List<Attribute> attributes;
     private List<Mapping> mappings;
     private List<RequiredInputAttribute> requiredInputAttributes = new ArrayList<>();
+    //ids of the authorities whose - unfiltered - output is added to the input of this authority
+    private List<String> dependsOn = new ArrayList<>();
     private int timeOut;
+    //adaptive socket timeout - percentile of the recent latencies plus the margin, clamped between the floor and
+    //timeOut - disabled when the percentile is zero
+    private double adaptiveTimeOutPercentile;
+    private int adaptiveTimeOutMarginMilliseconds = 100;
+    private int adaptiveTimeOutFloorMilliseconds = 100;
+    //bulkhead, when maxConcurrentCalls is zero the authority shares the aggregate_executor with the others
+    private int maxConcurrentCalls;
+    private int maxQueueDepth;
+    //circuit breaker, disabled when the failure rate threshold - a percentage - is zero
+    private int circuitBreakerFailureRateThreshold;
+    private int circuitBreakerWindowSize = 20;
+    private long circuitBreakerOpenMilliseconds = 30000;
+    private int circuitBreakerHalfOpenProbes = 3;
+    //hedged requests, disabled when hedgeAfterMilliseconds is zero
+    private int hedgeAfterMilliseconds;
+    private int hedgeBudgetPercentage = 5;
+    //cache policy, -1 uses the aggregate_cache_duration_milliseconds / aggregate_negative_cache_duration_milliseconds
+    //defaults and 0 disables caching of the non-empty / empty results. noCache bypasses the cache completely
+    private long cacheDurationMilliseconds = -1;
+    private long negativeCacheDurationMilliseconds = -1;
+    private boolean noCache;
+    //the values of the required input attributes are lower-cased in the cache key
+    private boolean caseInsensitiveInput;
     private String validationRegExp;
     @JsonIgnore
     private String password;
@@ -0,0 +1,33 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BatchAggregationRequest {
+
+    @NotNull
+    @Size(min = 1)
+    @Valid
+    private List<BatchAggregationUser> users;
+
+    //shared by all users
+    @NotNull
+    @Size
+    private Map<String, List<ArpValue>> arpAttributes;
+
+    //optional, overrides the global aggregate_deadline_milliseconds for each user
+    private Long deadlineMilliseconds;
+
+}
@@ -0,0 +1,25 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Set;
+
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BatchAggregationResult {
+
+    private String id;
+    private List<UserAttribute> userAttributes;
+    private Set<String> timedOutSources;
+    private Set<String> failedSources;
+
+    //true if the aggregation for this user could not be executed at all
+    private boolean failed;
+
+}
@@ -0,0 +1,25 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BatchAggregationUser {
+
+    //chosen by the client to correlate the streamed results, which are returned in order of completion
+    private String id;
+
+    @NotNull
+    @Size(min = 1)
+    private List<UserAttribute> userAttributes;
+
+}
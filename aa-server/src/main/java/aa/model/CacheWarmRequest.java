@@ -0,0 +1,27 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class CacheWarmRequest {
+
+    @NotNull
+    @Size(min = 1)
+    @Valid
+    private List<BatchAggregationUser> users;
+
+    //optional, the ids of the authorities to warm. Defaults to all authorities
+    private List<String> authorities;
+
+}
@@ -0,0 +1,22 @@
+package aa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * The filtered attributes of one authority in a streamed aggregation response.
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class SourceUserAttributes {
+
+    private String source;
+    private List<UserAttribute> userAttributes;
+
+}
@@ -0,0 +1,53 @@
+package aa.resilience;
+
+/**
+ * Derives the socket timeout of an authority from its observed latencies: the configured percentile plus a margin,
+ * clamped between a floor and the configured - static - timeout. Until enough latencies are recorded the static
+ * timeout is used.
+ */
+public class AdaptiveTimeout {
+
+    private static final long RECOMPUTE_INTERVAL_MILLIS = 1000;
+
+    private final LatencyHistogram histogram;
+    private final double percentile;
+    private final int marginMillis;
+    private final int floorMillis;
+    private final int ceilingMillis;
+    private final int minimumSamples;
+
+    private volatile int currentTimeoutMillis;
+    private volatile long recomputeAt;
+
+    public AdaptiveTimeout(LatencyHistogram histogram, double percentile, int marginMillis, int floorMillis,
+                           int ceilingMillis, int minimumSamples) {
+        this.histogram = histogram;
+        this.percentile = percentile;
+        this.marginMillis = marginMillis;
+        this.ceilingMillis = ceilingMillis;
+        this.floorMillis = Math.min(floorMillis, ceilingMillis);
+        this.minimumSamples = minimumSamples;
+        this.currentTimeoutMillis = ceilingMillis;
+    }
+
+    public void record(long millis) {
+        histogram.record(millis);
+    }
+
+    public int currentTimeoutMillis() {
+        long now = System.currentTimeMillis();
+        if (now >= recomputeAt) {
+            recomputeAt = now + RECOMPUTE_INTERVAL_MILLIS;
+            currentTimeoutMillis = compute();
+        }
+        return currentTimeoutMillis;
+    }
+
+    private int compute() {
+        if (histogram.count() < minimumSamples) {
+            return ceilingMillis;
+        }
+        long timeout = histogram.percentile(percentile) + marginMillis;
+        return (int) Math.max(floorMillis, Math.min(ceilingMillis, timeout));
+    }
+}
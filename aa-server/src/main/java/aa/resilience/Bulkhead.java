@@ -0,0 +1,63 @@
+package aa.resilience;
+
+import aa.service.FanOutExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Isolated concurrency compartment for one attribute authority. A slow authority can only exhaust its own threads
+ * and queue. Calls that do not get a slot fail fast and are counted.
+ */
+public class Bulkhead {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Bulkhead.class);
+
+    private final String authorityId;
+    private final FanOutExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String authorityId, int maxConcurrentCalls, int maxQueueDepth) {
+        this.authorityId = authorityId;
+        this.executor = new FanOutExecutor("bulkhead-" + authorityId + "-", maxConcurrentCalls, maxQueueDepth, false);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+        CompletableFuture<T> future = executor.submit(supplier);
+        if (isRejected(future)) {
+            rejected.increment();
+            LOG.warn("Bulkhead of {} is full, rejected call. Total rejected {}", authorityId, rejected.sum());
+        }
+        return future;
+    }
+
+    private boolean isRejected(CompletableFuture<?> future) {
+        if (!future.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException | CancellationException e) {
+            return e.getCause() instanceof RejectedExecutionException;
+        }
+    }
+
+    public String getAuthorityId() {
+        return authorityId;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,99 @@
+package aa.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Why a call to an attribute authority was given up. The call runs with its Cancellation bound to the worker thread,
+ * so when it finishes the outcome can be attributed: a call that the deadline abandoned is a timeout of the
+ * authority, a call that the caller no longer needs says nothing about it.
+ * <p>
+ * A blocking socket read does not stop on an interrupt, so every HTTP request of the call registers how it is
+ * aborted with {@link #onCancel(Runnable)}. Cancelling aborts the requests and frees the worker thread right away.
+ */
+public class Cancellation {
+
+    public enum Reason {
+        DEADLINE, CALLER
+    }
+
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    private final List<Runnable> aborts = new ArrayList<>();
+    private volatile Reason reason;
+    private boolean finished;
+
+    /**
+     * @return the Cancellation of the call that runs on the current thread or null outside of a call
+     */
+    public static Cancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registers the abort of a request with the call that runs on the current thread, if any. If the call is already
+     * cancelled the request is aborted right away.
+     */
+    public static void onCancel(Runnable abort) {
+        Cancellation cancellation = CURRENT.get();
+        if (cancellation != null) {
+            cancellation.register(abort);
+        }
+    }
+
+    public <T> T run(Supplier<T> call) {
+        Cancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+            synchronized (this) {
+                //the requests are done, an abort could close a pooled connection
+                finished = true;
+                aborts.clear();
+            }
+        }
+    }
+
+    /**
+     * Only the first reason is kept. Call before the future of the call is cancelled.
+     */
+    public void cancel(Reason reason) {
+        List<Runnable> toAbort;
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+            toAbort = new ArrayList<>(aborts);
+            aborts.clear();
+        }
+        toAbort.forEach(Runnable::run);
+    }
+
+    /**
+     * @return the reason the call was given up or null if it was not
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    private void register(Runnable abort) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            if (reason == null) {
+                aborts.add(abort);
+                return;
+            }
+        }
+        abort.run();
+    }
+}
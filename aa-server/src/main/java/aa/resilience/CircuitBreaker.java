@@ -0,0 +1,139 @@
+package aa.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker for one attribute authority.
+ * <p>
+ * The outcome of the last windowSize calls is recorded. When the window is full and the percentage of failed calls
+ * reaches the threshold the breaker opens and all calls are skipped. After the open period a limited number of probe
+ * calls is let through. If all probes succeed the breaker closes again, a single failed probe re-opens it.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String authorityId;
+    private final int failureRateThreshold;
+    private final long openDurationMillis;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+
+    //ring buffer with the outcomes of the last calls in the closed state
+    private final boolean[] window;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int successfulProbes;
+
+    public CircuitBreaker(String authorityId, int failureRateThreshold, int windowSize, long openDurationMillis,
+                          int halfOpenProbes) {
+        this(authorityId, failureRateThreshold, windowSize, openDurationMillis, halfOpenProbes, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String authorityId, int failureRateThreshold, int windowSize, long openDurationMillis,
+                   int halfOpenProbes, LongSupplier clock) {
+        this.authorityId = authorityId;
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the call to the authority may be made. Every granted call must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDurationMillis) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + successfulProbes >= halfOpenProbes) {
+                return false;
+            }
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (++successfulProbes >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recordedCalls == window.length && failedCalls * 100 >= failureRateThreshold * recordedCalls) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * The caller gave up on the call, e.g. because its client went away. It is not recorded, but a probe is released
+     * so the breaker does not get stuck half-open. A call abandoned by the deadline is a failure.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == window.length) {
+            if (window[windowIndex]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failedCalls++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State newState) {
+        LOG.warn("Circuit breaker of {} transitions from {} to {}", authorityId, state, newState);
+        state = newState;
+        probesInFlight = 0;
+        successfulProbes = 0;
+        if (newState == State.OPEN) {
+            openedAt = clock.getAsLong();
+        } else if (newState == State.CLOSED) {
+            windowIndex = 0;
+            recordedCalls = 0;
+            failedCalls = 0;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package aa.resilience;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String authorityId) {
+        super(String.format("Circuit breaker of %s is open", authorityId));
+    }
+}
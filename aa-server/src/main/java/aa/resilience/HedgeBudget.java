@@ -0,0 +1,41 @@
+package aa.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that limits hedged requests to a percentage of the primary requests. Every primary request earns a
+ * fraction of a token, every hedge costs a full token.
+ */
+public class HedgeBudget {
+
+    private static final long TOKEN = 100;
+
+    private final long maxTokens;
+    private final int percentage;
+    private final AtomicLong tokens;
+
+    /**
+     * @param percentage the maximum extra load - in percentages of the primary requests - caused by hedging
+     * @param burst      the maximum number of hedges that can be saved up when the authority is healthy
+     */
+    public HedgeBudget(int percentage, int burst) {
+        this.percentage = percentage;
+        this.maxTokens = burst * TOKEN;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    public void onRequest() {
+        tokens.getAndUpdate(current -> Math.min(maxTokens, current + percentage));
+    }
+
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package aa.resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Rolling histogram of call latencies in milliseconds. The buckets grow by ten percent, so a percentile is accurate
+ * within ten percent. The window is divided in slots and the oldest slot is cleared when it is reused, so only the
+ * latencies of the last window are taken into account.
+ */
+public class LatencyHistogram {
+
+    private static final long[] UPPER_BOUNDS = upperBounds();
+
+    private final Slot[] slots;
+    private final long slotMillis;
+    private final LongSupplier clock;
+
+    public LatencyHistogram(long windowMillis, int numberOfSlots) {
+        this(windowMillis, numberOfSlots, System::currentTimeMillis);
+    }
+
+    LatencyHistogram(long windowMillis, int numberOfSlots, LongSupplier clock) {
+        this.slots = new Slot[Math.max(1, numberOfSlots)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        this.slotMillis = Math.max(1, windowMillis / slots.length);
+        this.clock = clock;
+    }
+
+    public void record(long millis) {
+        long epoch = clock.getAsLong() / slotMillis;
+        Slot slot = slots[(int) (epoch % slots.length)];
+        if (slot.epoch != epoch) {
+            synchronized (slot) {
+                if (slot.epoch != epoch) {
+                    for (int i = 0; i < slot.counts.length(); i++) {
+                        slot.counts.set(i, 0);
+                    }
+                    slot.epoch = epoch;
+                }
+            }
+        }
+        slot.counts.incrementAndGet(bucket(millis));
+    }
+
+    /**
+     * @return the number of recorded latencies in the current window
+     */
+    public long count() {
+        return Arrays.stream(snapshot()).sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket that contains the percentile or -1 if there are no latencies recorded
+     */
+    public long percentile(double percentile) {
+        long[] counts = snapshot();
+        long total = Arrays.stream(counts).sum();
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100D);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return UPPER_BOUNDS[i];
+            }
+        }
+        return UPPER_BOUNDS[UPPER_BOUNDS.length - 1];
+    }
+
+    private long[] snapshot() {
+        long oldestEpoch = clock.getAsLong() / slotMillis - slots.length + 1;
+        long[] counts = new long[UPPER_BOUNDS.length];
+        for (Slot slot : slots) {
+            if (slot.epoch >= oldestEpoch) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += slot.counts.get(i);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int bucket(long millis) {
+        int index = Arrays.binarySearch(UPPER_BOUNDS, Math.max(0, millis));
+        return Math.min(index >= 0 ? index : -index - 1, UPPER_BOUNDS.length - 1);
+    }
+
+    //1, 2, 3 ... 10, 11, 12, 14 ... up to ten minutes
+    private static long[] upperBounds() {
+        long[] bounds = new long[256];
+        int size = 0;
+        long bound = 1;
+        while (bound < 600_000) {
+            bounds[size++] = bound;
+            bound = Math.max(bound + 1, (long) Math.ceil(bound * 1.1));
+        }
+        bounds[size++] = Long.MAX_VALUE;
+        return Arrays.copyOf(bounds, size);
+    }
+
+    private static class Slot {
+
+        private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS.length);
+        private volatile long epoch = Long.MIN_VALUE;
+
+    }
+}
@@ -0,0 +1,34 @@
+package aa.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads calls evenly over time: permits are handed out at most permitsPerSecond per second, without bursts. A
+ * caller that is too early waits for its turn.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    //the time the caller has to wait for the reserved permit
+    private synchronized long reserve(long now) {
+        long waitNanos = Math.max(0, nextFreeNanos - now);
+        nextFreeNanos = Math.max(nextFreeNanos, now) + intervalNanos;
+        return waitNanos;
+    }
+}
@@ -1,138 +1,646 @@
 package aa.service;
 
 import aa.aggregators.AttributeAggregator;
+import aa.analytics.AnalyticsEvent;
+import aa.analytics.AnalyticsPublisher;
+import aa.analytics.AuthorityCall;
+import aa.arp.ArpCompiler;
+import aa.arp.ArpMatcher;
+import aa.arp.CompiledArp;
+import aa.cache.CacheEntry;
+import aa.cache.CachePolicy;
+import aa.cache.RefreshAhead;
 import aa.cache.UserAttributeCache;
 import aa.config.AuthorityConfiguration;
+import aa.model.AggregationResult;
 import aa.model.ArpAggregationRequest;
 import aa.model.ArpValue;
 import aa.model.AttributeAuthorityConfiguration;
 import aa.model.UserAttribute;
+import aa.resilience.Bulkhead;
+import aa.resilience.Cancellation;
+import aa.resilience.CircuitBreaker;
+import aa.resilience.CircuitBreakerOpenException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import static java.util.Collections.emptyList;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 public class AttributeAggregatorService {
 
     private final static Logger LOG = LoggerFactory.getLogger(AttributeAggregatorService.class);
-    private static final Logger ANALYTICS_LOG = LoggerFactory.getLogger("analytics");
+    private static final Set<AuthorityCall.Outcome> FAILED_OUTCOMES = EnumSet.of(
+        AuthorityCall.Outcome.FAILED, AuthorityCall.Outcome.CIRCUIT_OPEN, AuthorityCall.Outcome.REJECTED);
 
     private final Map<String, AttributeAggregator> aggregators;
-    private final ForkJoinPool forkJoinPool;
-    private final AuthorityConfiguration configuration;
+    private final FanOutExecutor fanOutExecutor;
+    private final Map<String, Bulkhead> bulkheads;
+    private final Map<String, CircuitBreaker> circuitBreakers;
+    private final Map<String, CachePolicy> cachePolicies;
+    private final SingleFlight<List<UserAttribute>> singleFlight = new SingleFlight<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ArpCompiler arpCompiler = new ArpCompiler(1024);
+    private final AuthorityRegistry authorityRegistry;
     private final UserAttributeCache cache;
+    private final long deadlineMilliseconds;
+    private final AnalyticsPublisher analyticsPublisher;
+    private final RefreshAhead refreshAhead;
+    //the executor and publisher were created by the service and are shut down with it
+    private final boolean ownsExecutors;
 
+    /**
+     * Creates its own FanOutExecutor and AnalyticsPublisher, they are shut down in {@link #shutdown()}.
+     */
     public AttributeAggregatorService(List<AttributeAggregator> aggregators,
                                       AuthorityConfiguration configuration,
                                       UserAttributeCache cache) {
+        this(aggregators, configuration, cache, -1,
+            new FanOutExecutor(20 /* number of threads in embedded tomcat */ * aggregators.size(), 1000, false),
+            new AnalyticsPublisher(1024, 1, 1000), RefreshAhead.DISABLED, true);
+    }
+
+    /**
+     * @param deadlineMilliseconds the overall time budget for one aggregation request. Authorities that have not
+     *                             answered within the budget are cancelled - their HTTP requests are aborted, so
+     *                             the threads are freed - and reported as timed out. A value of zero or less means
+     *                             we wait for the slowest authority.
+     * @param fanOutExecutor       the executor for the - blocking - calls to the attribute authorities
+     * @param analyticsPublisher   the pipeline for the analytics events of the sampled requests
+     */
+    public AttributeAggregatorService(List<AttributeAggregator> aggregators,
+                                      AuthorityConfiguration configuration,
+                                      UserAttributeCache cache,
+                                      long deadlineMilliseconds,
+                                      FanOutExecutor fanOutExecutor,
+                                      AnalyticsPublisher analyticsPublisher) {
+        this(aggregators, configuration, cache, deadlineMilliseconds, fanOutExecutor, analyticsPublisher,
+            RefreshAhead.DISABLED);
+    }
+
+    /**
+     * @param refreshAhead schedules the refresh of the cache entries of frequent users before they become stale
+     */
+    public AttributeAggregatorService(List<AttributeAggregator> aggregators,
+                                      AuthorityConfiguration configuration,
+                                      UserAttributeCache cache,
+                                      long deadlineMilliseconds,
+                                      FanOutExecutor fanOutExecutor,
+                                      AnalyticsPublisher analyticsPublisher,
+                                      RefreshAhead refreshAhead) {
+        this(aggregators, configuration, cache, deadlineMilliseconds, fanOutExecutor, analyticsPublisher, refreshAhead,
+            false);
+    }
+
+    private AttributeAggregatorService(List<AttributeAggregator> aggregators,
+                                       AuthorityConfiguration configuration,
+                                       UserAttributeCache cache,
+                                       long deadlineMilliseconds,
+                                       FanOutExecutor fanOutExecutor,
+                                       AnalyticsPublisher analyticsPublisher,
+                                       RefreshAhead refreshAhead,
+                                       boolean ownsExecutors) {
         Assert.notEmpty(aggregators, "Aggregators must not be empty");
         this.aggregators = aggregators.stream().collect(toMap(AttributeAggregator::getAttributeAuthorityId, identity()));
-        this.forkJoinPool = new ForkJoinPool(20 /* number of threads in embedded tomcat */ * aggregators.size());
-        this.configuration = configuration;
+        this.fanOutExecutor = fanOutExecutor;
+        this.bulkheads = configuration.getAuthorities().stream()
+            .filter(authority -> authority.getMaxConcurrentCalls() > 0 && this.aggregators.containsKey(authority.getId()))
+            .collect(toMap(AttributeAuthorityConfiguration::getId, authority ->
+                new Bulkhead(authority.getId(), authority.getMaxConcurrentCalls(), authority.getMaxQueueDepth())));
+        this.circuitBreakers = configuration.getAuthorities().stream()
+            .filter(authority -> authority.getCircuitBreakerFailureRateThreshold() > 0)
+            .collect(toMap(AttributeAuthorityConfiguration::getId, authority -> new CircuitBreaker(
+                authority.getId(),
+                authority.getCircuitBreakerFailureRateThreshold(),
+                authority.getCircuitBreakerWindowSize(),
+                authority.getCircuitBreakerOpenMilliseconds(),
+                authority.getCircuitBreakerHalfOpenProbes())));
+        this.cachePolicies = configuration.getAuthorities().stream()
+            .collect(toMap(AttributeAuthorityConfiguration::getId, CachePolicy::of));
+        this.authorityRegistry = new AuthorityRegistry(configuration.getAuthorities(), this.aggregators);
         this.cache = cache;
+        this.deadlineMilliseconds = deadlineMilliseconds;
+        this.analyticsPublisher = analyticsPublisher;
+        this.refreshAhead = refreshAhead;
+        this.ownsExecutors = ownsExecutors;
     }
 
-    public List<UserAttribute> aggregateBasedOnArp(ArpAggregationRequest arpAggregationRequest) {
-        long start = System.currentTimeMillis();
-        ANALYTICS_LOG.info("Started to aggregate attributes based on ARP for input {}", arpAggregationRequest);
+    public AggregationResult aggregateBasedOnArp(ArpAggregationRequest arpAggregationRequest) {
+        return aggregateBasedOnArp(arpAggregationRequest, compileArp(arpAggregationRequest.getArpAttributes()));
+    }
+
+    public CompiledArp compileArp(Map<String, List<ArpValue>> arpAttributes) {
+        return arpCompiler.compile(arpAttributes);
+    }
 
-        Set<String> sources = arpAggregationRequest.getArpAttributes().values().stream()
-            .flatMap(arpValues -> arpValues.stream().map(ArpValue::getSource))
-            .collect(Collectors.toSet());
+    /**
+     * @param compiledArp the compiled version of the arpAttributes of the request, callers that aggregate for many
+     *                    users with the same ARP compile it only once
+     */
+    public AggregationResult aggregateBasedOnArp(ArpAggregationRequest arpAggregationRequest, CompiledArp compiledArp) {
+        return aggregateBasedOnArp(arpAggregationRequest, compiledArp, null);
+    }
 
-        List<AttributeAuthorityConfiguration> authorities = configuration.getAuthorities().stream()
-            .filter(conf -> sources.contains(conf.getId())).collect(toList());
+    /**
+     * @param listener if not null, called on the calling thread with the filtered attributes of each authority as
+     *                 soon as that authority has answered
+     */
+    public AggregationResult aggregateBasedOnArp(ArpAggregationRequest arpAggregationRequest,
+                                                 CompiledArp compiledArp,
+                                                 AuthorityResultListener listener) {
+        long start = System.currentTimeMillis();
+        boolean sampled = analyticsPublisher.isSampled();
 
         //get attributes from the authorities that were configured as Sources in the ARP
+        Set<String> timedOutSources = new TreeSet<>();
+        List<AuthorityCall> authorityCalls = new ArrayList<>();
         List<UserAttribute> aggregatedAttributes = getUserAttributes(
                 arpAggregationRequest.getUserAttributes(),
                 arpAggregationRequest.getArpAttributes(),
-                authorities);
-
-        ANALYTICS_LOG.info("All aggregating attributes based on ARP input {} with result {}", arpAggregationRequest, aggregatedAttributes);
+                compiledArp,
+                deadline(arpAggregationRequest, start),
+                timedOutSources,
+                authorityCalls,
+                listener);
 
         //Now filter all the attributes based on the values and source of the ARP
-        List<UserAttribute> filteredUserAttributes = aggregatedAttributes.stream().map(userAttribute -> {
-            List<ArpValue> arpValues = arpAggregationRequest.getArpAttributes().getOrDefault(userAttribute.getName(), emptyList());
-            List<String> allowedValues = arpValues.stream()
-                .filter(arpValue -> userAttribute.getSource().equals(arpValue.getSource()))
-                .map(ArpValue::getValue)
-                .collect(toList());
+        List<UserAttribute> filteredUserAttributes = filter(compiledArp, aggregatedAttributes);
+
+        Set<String> failedSources = authorityCalls.stream()
+            .filter(authorityCall -> FAILED_OUTCOMES.contains(authorityCall.getOutcome()))
+            .map(AuthorityCall::getAuthorityId)
+            .collect(toCollection(TreeSet::new));
+
+        if (sampled) {
+            analyticsPublisher.publish(new AnalyticsEvent(
+                start,
+                System.currentTimeMillis() - start,
+                arpAggregationRequest.getUserAttributes().size(),
+                arpAggregationRequest.getArpAttributes().size(),
+                aggregatedAttributes.size(),
+                filteredUserAttributes.size(),
+                authorityCalls.toArray(new AuthorityCall[0])));
+        }
+
+        return new AggregationResult(filteredUserAttributes, timedOutSources, failedSources);
+    }
+
+    private List<UserAttribute> filter(CompiledArp compiledArp, List<UserAttribute> userAttributes) {
+        return userAttributes.stream().map(userAttribute -> {
+            ArpMatcher arpMatcher = compiledArp.matcher(userAttribute.getName(), userAttribute.getSource());
+            if (arpMatcher == null) {
+                return Optional.<UserAttribute>empty();
+            }
             List<String> filteredValues = userAttribute.getValues().stream()
-                .filter(value -> this.valueAllowed(value, allowedValues)).collect(toList());
+                .filter(arpMatcher::matches).collect(toList());
             return filteredValues.isEmpty() ? Optional.<UserAttribute>empty() :
                 Optional.of(new UserAttribute(userAttribute.getName(), filteredValues, userAttribute.getSource()));
         }).filter(Optional::isPresent)
             .map(Optional::get)
             .collect(toList());
-
-        ANALYTICS_LOG.info("Finished aggregating and filtering attributes based on ARP in {} millis for input {} with result {}",
-            System.currentTimeMillis() - start, arpAggregationRequest, filteredUserAttributes);
-
-        return filteredUserAttributes;
     }
 
-    private boolean valueAllowed(String value, List<String> arpValues) {
-        return arpValues.stream().anyMatch(arpValue -> arpValue.equals("*") || arpValue.equalsIgnoreCase(value) ||
-            (arpValue.endsWith("*") && value.startsWith(arpValue.substring(0, arpValue.length() - 1))));
+    //the absolute point in time after which we stop waiting for authorities or -1 if there is no deadline
+    private long deadline(ArpAggregationRequest arpAggregationRequest, long start) {
+        Long requestDeadline = arpAggregationRequest.getDeadlineMilliseconds();
+        long budget = requestDeadline != null && requestDeadline > 0 ? requestDeadline : deadlineMilliseconds;
+        return budget > 0 ? start + budget : -1;
     }
 
     private List<UserAttribute> getUserAttributes(List<UserAttribute> input,
                                                   Map<String, List<ArpValue>> arpAttributes,
-                                                  Collection<AttributeAuthorityConfiguration> authorityConfigurations) {
-        //all of the names of input UserAttributes that at least have one non-empty value
-        List<String> inputNames = input.stream().filter(userAttribute -> userAttribute.getValues().stream()
-            .anyMatch(StringUtils::hasText))
-            .map(UserAttribute::getName)
-            .collect(toList());
+                                                  CompiledArp compiledArp,
+                                                  long deadline,
+                                                  Set<String> timedOutSources,
+                                                  List<AuthorityCall> authorityCalls,
+                                                  AuthorityResultListener listener) {
+        //the AttributeAggregators of the ARP sources and the AttributeAggregators they depend on
+        List<AttributeAggregator> attributeAggregators = authorityRegistry.plan(compiledArp.getSources());
+        long[] inputMask = authorityRegistry.inputMask(input);
 
-        //the actual AttributeAggregators to query filtered on the required input parameters
-        List<AttributeAggregator> attributeAggregators = authorityConfigurations.stream()
-            .map(attributeAuthority -> aggregators.get(attributeAuthority.getId()))
-            .filter(attributeAggregator -> inputNames.containsAll(attributeAggregator.attributeKeysRequired()))
-            .collect(toList());
+        long submitted = System.currentTimeMillis();
+        Map<String, CompletableFuture<AuthorityResponse>> scheduled = new HashMap<>();
+        Map<String, Cancellation> cancellations = new HashMap<>();
+        Map<String, CompletableFuture<AuthorityResponse>> futures = new LinkedHashMap<>();
+        attributeAggregators.forEach(aggregator -> futures.put(aggregator.getAttributeAuthorityId(),
+            schedule(aggregator, input, inputMask, arpAttributes, deadline, scheduled, cancellations)));
+
+        try {
+            if (listener == null) {
+                awaitAll(futures, deadline);
+            } else {
+                awaitEach(futures, deadline, authorityId -> {
+                    AuthorityResponse response = futures.get(authorityId).join();
+                    if (response.outcome != AuthorityCall.Outcome.SKIPPED && compiledArp.getSources().contains(authorityId)) {
+                        listener.onResult(authorityId, filter(compiledArp, response.userAttributes));
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach((authorityId, future) -> cancel(authorityId, future, cancellations, Cancellation.Reason.CALLER));
+            throw new RuntimeException("Interrupted while querying attribute aggregators.", e);
+        } catch (RuntimeException e) {
+            //the listener failed, e.g. the client of a streaming response went away
+            futures.forEach((authorityId, future) -> cancel(authorityId, future, cancellations, Cancellation.Reason.CALLER));
+            throw e;
+        }
+
+        //join in the order of the configuration to keep the result - and the consent - stable
+        List<UserAttribute> result = new ArrayList<>();
+        futures.forEach((authorityId, future) -> {
+            if (!future.isDone()) {
+                cancel(authorityId, future, cancellations, Cancellation.Reason.DEADLINE);
+            }
+            if (future.isCancelled()) {
+                timedOutSources.add(authorityId);
+                authorityCalls.add(new AuthorityCall(authorityId, AuthorityCall.Outcome.TIMED_OUT,
+                    System.currentTimeMillis() - submitted, 0));
+                LOG.warn("AttributeAggregator {} did not answer within the deadline of the request", authorityId);
+            } else if (future.isCompletedExceptionally()) {
+                authorityCalls.add(new AuthorityCall(authorityId, AuthorityCall.Outcome.REJECTED, 0, 0));
+                LOG.warn("AttributeAggregator {} could not be scheduled, returning empty result", authorityId);
+            } else {
+                AuthorityResponse response = future.join();
+                result.addAll(response.userAttributes);
+                authorityCalls.add(new AuthorityCall(authorityId, response.outcome, response.durationMillis,
+                    response.userAttributes.size()));
+            }
+        });
+        return result;
+    }
+
+    //the reason is set first, so the call can tell why it was interrupted
+    private void cancel(String authorityId, CompletableFuture<AuthorityResponse> future,
+                        Map<String, Cancellation> cancellations, Cancellation.Reason reason) {
+        Cancellation cancellation = cancellations.get(authorityId);
+        if (cancellation != null) {
+            cancellation.cancel(reason);
+        }
+        future.cancel(true);
+    }
+
+    //an authority is called as soon as all the authorities it depends on have answered, with their output as extra input
+    private CompletableFuture<AuthorityResponse> schedule(AttributeAggregator aggregator,
+                                                          List<UserAttribute> input,
+                                                          long[] inputMask,
+                                                          Map<String, List<ArpValue>> arpAttributes,
+                                                          long deadline,
+                                                          Map<String, CompletableFuture<AuthorityResponse>> scheduled,
+                                                          Map<String, Cancellation> cancellations) {
+        String authorityId = aggregator.getAttributeAuthorityId();
+        CompletableFuture<AuthorityResponse> future = scheduled.get(authorityId);
+        if (future != null) {
+            return future;
+        }
+        Cancellation cancellation = new Cancellation();
+        cancellations.put(authorityId, cancellation);
+        List<String> dependencies = authorityRegistry.dependencies(authorityId);
+        if (dependencies.isEmpty()) {
+            future = authorityRegistry.isSatisfiedBy(authorityId, inputMask) ?
+                submit(aggregator, () -> cancellation.run(() -> doAggregate(input, aggregator, arpAttributes, deadline))) :
+                CompletableFuture.completedFuture(AuthorityResponse.skipped());
+        } else {
+            List<CompletableFuture<AuthorityResponse>> dependencyFutures = dependencies.stream()
+                .map(dependency -> schedule(aggregators.get(dependency), input, inputMask, arpAttributes, deadline,
+                    scheduled, cancellations))
+                .collect(toList());
+            CompletableFuture<AuthorityResponse> result = new CompletableFuture<>();
+            CompletableFuture.allOf(dependencyFutures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, t) -> {
+                if (result.isDone()) {
+                    return;
+                }
+                //a cancelled dependency means the deadline has passed
+                if (dependencyFutures.stream().anyMatch(CompletableFuture::isCancelled)) {
+                    result.cancel(false);
+                    return;
+                }
+                List<UserAttribute> enrichedInput = new ArrayList<>(input);
+                dependencyFutures.stream()
+                    .filter(dependencyFuture -> !dependencyFuture.isCompletedExceptionally())
+                    .forEach(dependencyFuture -> enrichedInput.addAll(dependencyFuture.join().userAttributes));
+                if (!authorityRegistry.isSatisfiedBy(authorityId, authorityRegistry.inputMask(enrichedInput))) {
+                    result.complete(AuthorityResponse.skipped());
+                    return;
+                }
+                CompletableFuture<AuthorityResponse> call = submit(aggregator,
+                    () -> cancellation.run(() -> doAggregate(enrichedInput, aggregator, arpAttributes, deadline)));
+                result.whenComplete((response, t2) -> {
+                    if (result.isCancelled()) {
+                        call.cancel(true);
+                    }
+                });
+                call.whenComplete((response, t3) -> {
+                    if (t3 != null) {
+                        result.completeExceptionally(t3);
+                    } else {
+                        result.complete(response);
+                    }
+                });
+            });
+            future = result;
+        }
+        scheduled.put(authorityId, future);
+        return future;
+    }
+
+    private void awaitAll(Map<String, CompletableFuture<AuthorityResponse>> futures, long deadline)
+        throws InterruptedException {
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+        try {
+            if (deadline < 0) {
+                all.get();
+            } else {
+                all.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            //handled per authority
+        } catch (ExecutionException e) {
+            //rejected tasks, handled per authority
+        }
+    }
+
+    //hands each successfully completed authority to the consumer, in order of completion and on the calling thread
+    private void awaitEach(Map<String, CompletableFuture<AuthorityResponse>> futures, long deadline,
+                           Consumer<String> consumer) throws InterruptedException {
+        BlockingQueue<String> completed = new LinkedBlockingQueue<>();
+        futures.forEach((authorityId, future) -> future.whenComplete((response, t) -> completed.add(authorityId)));
+        for (int remaining = futures.size(); remaining > 0; remaining--) {
+            String authorityId = deadline < 0 ? completed.take() :
+                completed.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (authorityId == null) {
+                return;
+            }
+            if (!futures.get(authorityId).isCompletedExceptionally()) {
+                consumer.accept(authorityId);
+            }
+        }
+    }
+
+    //authorities with a bulkhead run isolated, all others share the fan-out executor
+    private <T> CompletableFuture<T> submit(AttributeAggregator aggregator, Supplier<T> call) {
+        Bulkhead bulkhead = bulkheads.get(aggregator.getAttributeAuthorityId());
+        return bulkhead != null ? bulkhead.submit(call) : fanOutExecutor.submit(call);
+    }
+
+    /**
+     * @return per authority the socket timeout in milliseconds that is used for the next call
+     */
+    public Map<String, Integer> effectiveTimeOuts() {
+        return aggregators.values().stream()
+            .collect(toMap(AttributeAggregator::getAttributeAuthorityId, AttributeAggregator::getEffectiveTimeOut,
+                (a, b) -> a, TreeMap::new));
+    }
+
+    //visible for testing
+    CircuitBreaker.State circuitBreakerState(String authorityId) {
+        return circuitBreakers.get(authorityId).getState();
+    }
+
+    public Set<String> getAttributeAuthorityIds() {
+        return new TreeSet<>(aggregators.keySet());
+    }
+
+    /**
+     * Evicts the cached results of the user, e.g. after the user linked or removed an account, so a long cache
+     * duration does not serve outdated attributes. The keys are computed from the input, so only authorities whose
+     * required input attributes are all in the input are evicted. A refresh that is already running may still put
+     * the old result back.
+     *
+     * @param authorityIds the authorities to evict, all authorities when empty
+     * @return the ids of the authorities for which the entry of the user was evicted
+     */
+    public Set<String> evictUser(List<UserAttribute> input, Collection<String> authorityIds) throws IOException {
+        Map<String, String> cacheKeys = cacheKeys(input, authorityIds);
+        for (String cacheKey : cacheKeys.values()) {
+            cache.evict(cacheKey);
+        }
+        LOG.debug("Evicted the cached results of authorities {}", cacheKeys.keySet());
+        return cacheKeys.keySet();
+    }
+
+    /**
+     * For debugging: the cached results of the user per authority, also when they are expired. The keys are computed
+     * from the input like {@link #evictUser(List, Collection)} does.
+     *
+     * @param authorityIds the authorities to look up, all authorities when empty
+     * @return per authority with a cached result of the user the entry
+     */
+    public Map<String, CacheEntry> inspectUser(List<UserAttribute> input, Collection<String> authorityIds) throws IOException {
+        Map<String, CacheEntry> entries = new TreeMap<>();
+        for (Map.Entry<String, String> cacheKey : cacheKeys(input, authorityIds).entrySet()) {
+            Optional<CacheEntry> entry = cache.inspect(cacheKey.getValue());
+            if (entry.isPresent()) {
+                entries.put(cacheKey.getKey(), entry.get());
+            }
+        }
+        return entries;
+    }
 
+    //per authority whose required input attributes are all in the input the key of the cached result of the user
+    private Map<String, String> cacheKeys(List<UserAttribute> input, Collection<String> authorityIds) {
+        assertKnown(authorityIds);
+        long[] inputMask = authorityRegistry.inputMask(input);
+        Map<String, String> cacheKeys = new TreeMap<>();
+        for (AttributeAggregator aggregator : aggregators.values()) {
+            String authorityId = aggregator.getAttributeAuthorityId();
+            if ((authorityIds.isEmpty() || authorityIds.contains(authorityId)) &&
+                authorityRegistry.isSatisfiedBy(authorityId, inputMask)) {
+                aggregator.cacheKey(input).ifPresent(cacheKey -> cacheKeys.put(authorityId, cacheKey));
+            }
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * Evicts the cached results of the user with the name id - the urn of the accounts - for all authorities. Called
+     * when the accounts of the user change; a failure is logged and the entries then expire with the cache duration.
+     */
+    public void evictNameId(String nameId) {
         try {
-            return forkJoinPool.submit(() -> attributeAggregators.parallelStream().map(aggregator ->
-                doAggregate(input, aggregator, arpAttributes)).flatMap(List::stream).collect(toList())).get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Unable to schedule querying of attribute aggregators.", e);
+            evictUser(Collections.singletonList(new UserAttribute(AttributeAggregator.NAME_ID,
+                Collections.singletonList(nameId))), Collections.emptyList());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Evicting the cached results of {} failed: {}", nameId, e.toString());
+        }
+    }
+
+    /**
+     * @return the number of evicted entries or -1 if the cache can not tell
+     */
+    public long evictAuthority(String authorityId) throws IOException {
+        assertKnown(Collections.singletonList(authorityId));
+        return cache.evictAuthority(authorityId);
+    }
+
+    private void assertKnown(Collection<String> authorityIds) {
+        authorityIds.stream().filter(authorityId -> !aggregators.containsKey(authorityId)).findAny()
+            .ifPresent(authorityId -> {
+                throw new IllegalArgumentException("Unknown attribute authority " + authorityId);
+            });
+    }
+
+    public void shutdown() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+        aggregators.values().forEach(AttributeAggregator::shutdown);
+        if (ownsExecutors) {
+            fanOutExecutor.shutdown();
+            analyticsPublisher.shutdown();
         }
     }
 
-    private List<UserAttribute> doAggregate(List<UserAttribute> input,
-                                            AttributeAggregator aggregator,
-                                            Map<String, List<ArpValue>> arpAttributes) {
+    private AuthorityResponse doAggregate(List<UserAttribute> input,
+                                          AttributeAggregator aggregator,
+                                          Map<String, List<ArpValue>> arpAttributes,
+                                          long deadline) {
+        long start = System.currentTimeMillis();
         try {
             Optional<String> cacheKey = aggregator.cacheKey(input);
-            Optional<List<UserAttribute>> userAttributesFromCache = cache.get(cacheKey);
-            if (userAttributesFromCache.isPresent()) {
-                return userAttributesFromCache.get();
+            Optional<CacheEntry> cacheEntry = cachePolicy(aggregator).isNoCache() ?
+                Optional.empty() : cache.getEntry(cacheKey);
+            if (cacheEntry.isPresent()) {
+                if (cacheEntry.get().isStale(start)) {
+                    refreshInBackground(input, aggregator, arpAttributes, cacheKey);
+                } else {
+                    refreshAhead.onHit(cacheKey.get(), cacheEntry.get(),
+                        () -> refreshInBackground(input, aggregator, arpAttributes, cacheKey));
+                }
+                return new AuthorityResponse(cacheEntry.get().getUserAttributes(), AuthorityCall.Outcome.CACHE_HIT, start);
             }
-            List<UserAttribute> userAttributes = aggregator.aggregate(input, arpAttributes);
-            List<UserAttribute> filteredAttributes = aggregator.filterInvalidResponses(userAttributes);
-            cache.put(cacheKey, filteredAttributes);
-            return filteredAttributes;
+            //concurrent cache misses for the same key share one call to the authority, each until its own deadline
+            List<UserAttribute> userAttributes = cacheKey.isPresent() ?
+                singleFlight.execute(cacheKey.get(), deadline, () -> fetch(input, aggregator, arpAttributes, cacheKey)) :
+                fetch(input, aggregator, arpAttributes, cacheKey);
+            return new AuthorityResponse(userAttributes, AuthorityCall.Outcome.FETCHED, start);
+        } catch (CircuitBreakerOpenException e) {
+            LOG.debug(e.getMessage());
+            return new AuthorityResponse(Collections.emptyList(), AuthorityCall.Outcome.CIRCUIT_OPEN, start);
         } catch (IOException | RuntimeException e) {
             LOG.warn("AttributeAggregator {} threw exception: {} ", aggregator.getAttributeAuthorityId(), e);
-            return Collections.emptyList();
+            return new AuthorityResponse(Collections.emptyList(), AuthorityCall.Outcome.FAILED, start);
+        }
+    }
+
+    //stale entries are served while at most one refresh per key runs, a failed refresh leaves the stale entry in place
+    private void refreshInBackground(List<UserAttribute> input,
+                                     AttributeAggregator aggregator,
+                                     Map<String, List<ArpValue>> arpAttributes,
+                                     Optional<String> cacheKey) {
+        String key = cacheKey.get();
+        if (!refreshing.add(key)) {
+            return;
+        }
+        submit(aggregator, () -> singleFlight.execute(key, () -> fetch(input, aggregator, arpAttributes, cacheKey)))
+            .whenComplete((userAttributes, t) -> {
+                refreshing.remove(key);
+                if (t != null) {
+                    LOG.warn("Background refresh of AttributeAggregator {} failed: {}", aggregator.getAttributeAuthorityId(), t.toString());
+                }
+            });
+    }
+
+    private List<UserAttribute> fetch(List<UserAttribute> input,
+                                      AttributeAggregator aggregator,
+                                      Map<String, List<ArpValue>> arpAttributes,
+                                      Optional<String> cacheKey) {
+        List<UserAttribute> userAttributes = callThroughCircuitBreaker(input, aggregator, arpAttributes);
+        List<UserAttribute> filteredAttributes = aggregator.filterInvalidResponses(userAttributes);
+        try {
+            //only reached when the authority answered, so an empty result means it has nothing for this user
+            cache.put(cacheKey, filteredAttributes, cachePolicy(aggregator));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return filteredAttributes;
+    }
+
+    private CachePolicy cachePolicy(AttributeAggregator aggregator) {
+        return cachePolicies.getOrDefault(aggregator.getAttributeAuthorityId(), CachePolicy.DEFAULT);
+    }
+
+    private List<UserAttribute> callThroughCircuitBreaker(List<UserAttribute> input,
+                                                          AttributeAggregator aggregator,
+                                                          Map<String, List<ArpValue>> arpAttributes) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(aggregator.getAttributeAuthorityId());
+        if (circuitBreaker == null) {
+            return aggregator.aggregate(input, arpAttributes);
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException(aggregator.getAttributeAuthorityId());
+        }
+        boolean recorded = false;
+        try {
+            List<UserAttribute> userAttributes = aggregator.aggregate(input, arpAttributes);
+            //an answer after the deadline is a timeout for the caller
+            if (cancellationReason() == Cancellation.Reason.DEADLINE) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            recorded = true;
+            return userAttributes;
+        } catch (RuntimeException e) {
+            //a call the caller gave up on says nothing about the health of the authority
+            if (cancellationReason() != Cancellation.Reason.CALLER) {
+                circuitBreaker.onFailure();
+                recorded = true;
+            }
+            throw e;
+        } finally {
+            if (!recorded) {
+                circuitBreaker.onIgnored();
+            }
+        }
+    }
+
+    private static Cancellation.Reason cancellationReason() {
+        Cancellation cancellation = Cancellation.current();
+        return cancellation != null ? cancellation.getReason() : null;
+    }
+
+    //the attributes of one authority and how they were obtained
+    private static class AuthorityResponse {
+
+        private final List<UserAttribute> userAttributes;
+        private final AuthorityCall.Outcome outcome;
+        private final long durationMillis;
+
+        private AuthorityResponse(List<UserAttribute> userAttributes, AuthorityCall.Outcome outcome, long start) {
+            this.userAttributes = userAttributes;
+            this.outcome = outcome;
+            this.durationMillis = System.currentTimeMillis() - start;
+        }
+
+        //the required input attributes were not present, not even after the dependencies answered
+        private static AuthorityResponse skipped() {
+            return new AuthorityResponse(Collections.emptyList(), AuthorityCall.Outcome.SKIPPED, System.currentTimeMillis());
         }
     }
 
@@ -0,0 +1,165 @@
+package aa.service;
+
+import aa.aggregators.AttributeAggregator;
+import aa.model.AttributeAuthorityConfiguration;
+import aa.model.UserAttribute;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable index of the authorities that have an AttributeAggregator, built once at startup.
+ * <p>
+ * All required input attribute names are interned to a bit index. The required inputs of an authority and the
+ * non-empty inputs of a request are both bitmasks, so checking if an authority can be queried is a few word
+ * operations.
+ * <p>
+ * Authorities can depend on other authorities, the dependencies must form a directed acyclic graph.
+ */
+public class AuthorityRegistry {
+
+    private final Map<String, RegisteredAuthority> authoritiesById;
+    private final List<RegisteredAuthority> authorities;
+    private final Map<String, Integer> inputAttributeIds = new HashMap<>();
+    private final int words;
+
+    public AuthorityRegistry(Collection<AttributeAuthorityConfiguration> configurations,
+                             Map<String, AttributeAggregator> aggregators) {
+        configurations.stream()
+            .filter(configuration -> aggregators.containsKey(configuration.getId()))
+            .flatMap(configuration -> aggregators.get(configuration.getId()).attributeKeysRequired().stream())
+            .forEach(name -> inputAttributeIds.computeIfAbsent(name, key -> inputAttributeIds.size()));
+        this.words = Math.max(1, (inputAttributeIds.size() + 63) / 64);
+
+        Map<String, RegisteredAuthority> byId = new LinkedHashMap<>();
+        configurations.stream()
+            .filter(configuration -> aggregators.containsKey(configuration.getId()))
+            .forEach(configuration -> {
+                AttributeAggregator aggregator = aggregators.get(configuration.getId());
+                long[] requiredMask = new long[words];
+                aggregator.attributeKeysRequired().forEach(name -> set(requiredMask, inputAttributeIds.get(name)));
+                List<String> dependsOn = configuration.getDependsOn() != null ?
+                    Collections.unmodifiableList(new ArrayList<>(configuration.getDependsOn())) : Collections.emptyList();
+                byId.put(configuration.getId(), new RegisteredAuthority(configuration, aggregator, requiredMask, dependsOn));
+            });
+        this.authoritiesById = Collections.unmodifiableMap(byId);
+        this.authorities = Collections.unmodifiableList(new ArrayList<>(byId.values()));
+        validateDependencies();
+    }
+
+    public Optional<AttributeAuthorityConfiguration> getById(String authorityId) {
+        RegisteredAuthority authority = authoritiesById.get(authorityId);
+        return authority != null ? Optional.of(authority.configuration) : Optional.empty();
+    }
+
+    /**
+     * @return the mask of the input attributes that have at least one non-empty value. Input attributes that are
+     * not required by any authority are ignored.
+     */
+    public long[] inputMask(List<UserAttribute> input) {
+        long[] mask = new long[words];
+        for (UserAttribute userAttribute : input) {
+            Integer id = inputAttributeIds.get(userAttribute.getName());
+            if (id != null && userAttribute.getValues() != null &&
+                userAttribute.getValues().stream().anyMatch(StringUtils::hasText)) {
+                set(mask, id);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the aggregators - in order of configuration - of the sources and of all the authorities they depend on,
+     * directly or indirectly
+     */
+    public List<AttributeAggregator> plan(Collection<String> sources) {
+        Set<String> needed = new HashSet<>();
+        sources.forEach(source -> addWithDependencies(source, needed));
+        List<AttributeAggregator> result = new ArrayList<>();
+        for (RegisteredAuthority authority : authorities) {
+            if (needed.contains(authority.configuration.getId())) {
+                result.add(authority.aggregator);
+            }
+        }
+        return result;
+    }
+
+    public List<String> dependencies(String authorityId) {
+        return authoritiesById.get(authorityId).dependsOn;
+    }
+
+    /**
+     * @return true if all required input attributes of the authority are present in the inputMask
+     */
+    public boolean isSatisfiedBy(String authorityId, long[] inputMask) {
+        return authoritiesById.get(authorityId).isSatisfiedBy(inputMask);
+    }
+
+    private void addWithDependencies(String authorityId, Set<String> needed) {
+        RegisteredAuthority authority = authoritiesById.get(authorityId);
+        if (authority != null && needed.add(authorityId)) {
+            authority.dependsOn.forEach(dependency -> addWithDependencies(dependency, needed));
+        }
+    }
+
+    private void validateDependencies() {
+        authorities.forEach(authority -> authority.dependsOn.forEach(dependency -> {
+            if (!authoritiesById.containsKey(dependency)) {
+                throw new IllegalArgumentException(String.format("Authority %s depends on unknown authority %s",
+                    authority.configuration.getId(), dependency));
+            }
+        }));
+        Set<String> visited = new HashSet<>();
+        authorities.forEach(authority -> visit(authority.configuration.getId(), visited, new LinkedHashSet<>()));
+    }
+
+    private void visit(String authorityId, Set<String> visited, Set<String> path) {
+        if (!path.add(authorityId)) {
+            throw new IllegalArgumentException("Cyclic dependency between authorities " + String.join(" -> ", path)
+                + " -> " + authorityId);
+        }
+        if (visited.add(authorityId)) {
+            authoritiesById.get(authorityId).dependsOn.forEach(dependency -> visit(dependency, visited, path));
+        }
+        path.remove(authorityId);
+    }
+
+    private static void set(long[] mask, int id) {
+        mask[id >>> 6] |= 1L << id;
+    }
+
+    private static class RegisteredAuthority {
+
+        private final AttributeAuthorityConfiguration configuration;
+        private final AttributeAggregator aggregator;
+        private final long[] requiredMask;
+        private final List<String> dependsOn;
+
+        private RegisteredAuthority(AttributeAuthorityConfiguration configuration, AttributeAggregator aggregator,
+                                    long[] requiredMask, List<String> dependsOn) {
+            this.configuration = configuration;
+            this.aggregator = aggregator;
+            this.requiredMask = requiredMask;
+            this.dependsOn = dependsOn;
+        }
+
+        private boolean isSatisfiedBy(long[] inputMask) {
+            for (int i = 0; i < requiredMask.length; i++) {
+                if ((requiredMask[i] & inputMask[i]) != requiredMask[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
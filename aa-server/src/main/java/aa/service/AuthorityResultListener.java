@@ -0,0 +1,15 @@
+package aa.service;
+
+import aa.model.UserAttribute;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface AuthorityResultListener {
+
+    /**
+     * @param userAttributes the attributes of the authority, already filtered by the ARP
+     */
+    void onResult(String authorityId, List<UserAttribute> userAttributes);
+
+}
@@ -0,0 +1,90 @@
+package aa.service;
+
+import aa.arp.CompiledArp;
+import aa.model.AggregationResult;
+import aa.model.ArpAggregationRequest;
+import aa.model.BatchAggregationRequest;
+import aa.model.BatchAggregationResult;
+import aa.model.BatchAggregationUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates the attributes of many users that share one ARP. The ARP is compiled once, at most parallelism users
+ * of one batch are aggregated at the same time and the results are handed to the consumer - on the calling
+ * thread - in order of completion.
+ */
+@Service
+public class BatchAggregationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchAggregationService.class);
+
+    private final AttributeAggregatorService attributeAggregatorService;
+    private final FanOutExecutor batchExecutor;
+    private final int parallelism;
+
+    @Autowired
+    public BatchAggregationService(AttributeAggregatorService attributeAggregatorService,
+                                   @Value("${aggregate_batch.parallelism}") int parallelism,
+                                   @Value("${aggregate_batch.queue_capacity}") int queueCapacity) {
+        this.attributeAggregatorService = attributeAggregatorService;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchExecutor = new FanOutExecutor("aggregator-batch-", this.parallelism, queueCapacity, false);
+    }
+
+    public void aggregate(BatchAggregationRequest batchAggregationRequest,
+                          Consumer<BatchAggregationResult> consumer) throws InterruptedException {
+        CompiledArp compiledArp = attributeAggregatorService.compileArp(batchAggregationRequest.getArpAttributes());
+        List<BatchAggregationUser> users = batchAggregationRequest.getUsers();
+        BlockingQueue<BatchAggregationResult> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<AggregationResult>> futures = new ArrayList<>();
+
+        int submitted = 0;
+        int emitted = 0;
+        try {
+            while (emitted < users.size()) {
+                while (submitted < users.size() && submitted - emitted < parallelism) {
+                    BatchAggregationUser user = users.get(submitted++);
+                    ArpAggregationRequest arpAggregationRequest = new ArpAggregationRequest(user.getUserAttributes(),
+                        batchAggregationRequest.getArpAttributes(), batchAggregationRequest.getDeadlineMilliseconds());
+                    CompletableFuture<AggregationResult> future = batchExecutor.submit(() ->
+                        attributeAggregatorService.aggregateBasedOnArp(arpAggregationRequest, compiledArp));
+                    future.whenComplete((result, t) -> completed.add(result(user, result, t)));
+                    futures.add(future);
+                }
+                consumer.accept(completed.take());
+                emitted++;
+            }
+        } finally {
+            //the consumer failed - e.g. the client went away - or we were interrupted, no need to finish the batch
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private BatchAggregationResult result(BatchAggregationUser user, AggregationResult result, Throwable t) {
+        if (t != null) {
+            LOG.warn("Batch aggregation for user {} failed: {}", user.getId(), t.toString());
+            return new BatchAggregationResult(user.getId(), Collections.emptyList(), Collections.emptySet(),
+                Collections.emptySet(), true);
+        }
+        return new BatchAggregationResult(user.getId(), result.getUserAttributes(), result.getTimedOutSources(),
+            result.getFailedSources(), false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+    }
+}
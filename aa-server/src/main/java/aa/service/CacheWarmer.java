@@ -0,0 +1,102 @@
+package aa.service;
+
+import aa.arp.CompiledArp;
+import aa.model.AggregationResult;
+import aa.model.ArpAggregationRequest;
+import aa.model.ArpValue;
+import aa.model.BatchAggregationUser;
+import aa.model.CacheWarmRequest;
+import aa.resilience.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Fills the cache for a list of users, e.g. before the start of the academic year. Every authority is warmed on its
+ * own thread and is called for at most requestsPerSecond users per second, also when several warm requests run at
+ * the same time. Users that are already cached do not cause a call, but do count towards the rate.
+ */
+@Service
+public class CacheWarmer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final AttributeAggregatorService attributeAggregatorService;
+    private final double requestsPerSecond;
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final FanOutExecutor warmExecutor;
+
+    @Autowired
+    public CacheWarmer(AttributeAggregatorService attributeAggregatorService,
+                       @Value("${aggregate_cache_warm.requests_per_second}") double requestsPerSecond) {
+        this.attributeAggregatorService = attributeAggregatorService;
+        this.requestsPerSecond = requestsPerSecond;
+        this.warmExecutor = new FanOutExecutor("cache-warmer-",
+            attributeAggregatorService.getAttributeAuthorityIds().size(), 100, false);
+    }
+
+    /**
+     * @return completes with the number of users per authority for which the authority did not fail or time out
+     */
+    public CompletableFuture<Map<String, Integer>> warm(CacheWarmRequest cacheWarmRequest) {
+        Set<String> knownAuthorityIds = attributeAggregatorService.getAttributeAuthorityIds();
+        List<String> authorityIds = CollectionUtils.isEmpty(cacheWarmRequest.getAuthorities()) ?
+            new ArrayList<>(knownAuthorityIds) : cacheWarmRequest.getAuthorities();
+        authorityIds.stream().filter(authorityId -> !knownAuthorityIds.contains(authorityId)).findAny()
+            .ifPresent(authorityId -> {
+                throw new IllegalArgumentException("Unknown attribute authority " + authorityId);
+            });
+
+        Map<String, CompletableFuture<Integer>> futures = new TreeMap<>();
+        authorityIds.forEach(authorityId -> futures.put(authorityId,
+            warmExecutor.submit(() -> warm(authorityId, cacheWarmRequest.getUsers()))));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, Integer> result = new TreeMap<>();
+            futures.forEach((authorityId, future) -> result.put(authorityId, future.join()));
+            return result;
+        });
+    }
+
+    private int warm(String authorityId, List<BatchAggregationUser> users) {
+        RateLimiter rateLimiter = rateLimiters.computeIfAbsent(authorityId, id -> new RateLimiter(requestsPerSecond));
+        //an ARP with only this authority as source, the authorities it depends on are called - and cached - as well
+        Map<String, List<ArpValue>> arpAttributes = singletonMap("*", singletonList(new ArpValue("*", authorityId)));
+        CompiledArp compiledArp = attributeAggregatorService.compileArp(arpAttributes);
+        int warmed = 0;
+        for (BatchAggregationUser user : users) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            AggregationResult result = attributeAggregatorService.aggregateBasedOnArp(
+                new ArpAggregationRequest(user.getUserAttributes(), arpAttributes), compiledArp);
+            if (!result.getFailedSources().contains(authorityId) && !result.getTimedOutSources().contains(authorityId)) {
+                warmed++;
+            }
+        }
+        LOG.info("Warmed the cache of {} for {} of {} users", authorityId, warmed, users.size());
+        return warmed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        warmExecutor.shutdown();
+    }
+}
@@ -0,0 +1,136 @@
+package aa.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for the blocking I/O calls to the attribute authorities. Every task is exposed as a
+ * CompletableFuture and cancelling that future interrupts the worker thread.
+ * <p>
+ * On a JVM that supports virtual threads these can be used instead of platform threads. The number of running
+ * tasks is then still limited by the pool size and the number of waiting tasks by the queue capacity.
+ */
+public class FanOutExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FanOutExecutor.class);
+    private static final String THREAD_NAME_PREFIX = "aggregator-io-";
+
+    private final ExecutorService executorService;
+    private final int poolSize;
+    private final int queueCapacity;
+    private final boolean virtualThreads;
+
+    //only used to bound virtual threads
+    private final Semaphore running;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    public FanOutExecutor(int poolSize, int queueCapacity, boolean useVirtualThreads) {
+        this(THREAD_NAME_PREFIX, poolSize, queueCapacity, useVirtualThreads);
+    }
+
+    public FanOutExecutor(String threadNamePrefix, int poolSize, int queueCapacity, boolean useVirtualThreads) {
+        this.poolSize = poolSize;
+        this.queueCapacity = queueCapacity;
+        ExecutorService virtualThreadExecutor = useVirtualThreads ? virtualThreadExecutor(threadNamePrefix) : null;
+        this.virtualThreads = virtualThreadExecutor != null;
+        if (virtualThreads) {
+            this.executorService = virtualThreadExecutor;
+            this.running = new Semaphore(poolSize);
+        } else {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                    new CustomizableThreadFactory(threadNamePrefix));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            this.executorService = threadPoolExecutor;
+            this.running = null;
+        }
+        LOG.info("Started aggregator executor {} with pool size {}, queue capacity {} and virtual threads {}",
+                threadNamePrefix, poolSize, queueCapacity, virtualThreads);
+    }
+
+    /**
+     * Schedules the supplier. If the executor is saturated the returned future is completed exceptionally with a
+     * RejectedExecutionException.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> supplier) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+        try {
+            Future<?> future = executorService.submit(virtualThreads ? bounded(task) : task);
+            result.whenComplete((value, t) -> {
+                if (result.isCancelled()) {
+                    future.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private Runnable bounded(Runnable task) {
+        if (outstanding.incrementAndGet() > poolSize + queueCapacity) {
+            outstanding.decrementAndGet();
+            throw new RejectedExecutionException("Aggregator executor is saturated");
+        }
+        return () -> {
+            try {
+                running.acquire();
+                try {
+                    task.run();
+                } finally {
+                    running.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        };
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    //Java 21 API, we compile against Java 11 hence the reflection
+    private static ExecutorService virtualThreadExecutor(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            Object threadFactory = builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads are not supported on this JVM, falling back to platform threads");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package aa.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class FanOutExecutorConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public FanOutExecutor fanOutExecutor(@Value("${aggregate_executor.pool_size}") int poolSize,
+                                         @Value("${aggregate_executor.queue_capacity}") int queueCapacity,
+                                         @Value("${aggregate_executor.virtual_threads}") boolean virtualThreads) {
+        return new FanOutExecutor(poolSize, queueCapacity, virtualThreads);
+    }
+
+}
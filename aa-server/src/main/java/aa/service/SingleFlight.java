@@ -0,0 +1,78 @@
+package aa.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls with the same key. The first caller - the leader - executes the call and every
+ * caller that arrives while the call is in flight waits for - and receives - the result of the leader. A caller with
+ * a deadline waits at most until its own deadline, also when the leader has a later one.
+ */
+public class SingleFlight<V> {
+
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public V execute(String key, Supplier<V> call) {
+        return execute(key, -1, call);
+    }
+
+    /**
+     * @param deadline the absolute point in time after which a follower stops waiting for the leader or -1 to wait
+     *                 until the leader is done
+     */
+    public V execute(String key, long deadline, Supplier<V> call) {
+        CompletableFuture<V> leader = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            return await(existing, deadline);
+        }
+        try {
+            V value = call.get();
+            leader.complete(value);
+            return value;
+        } catch (Throwable t) {
+            //also an Error, the followers must never wait for a leader that is gone
+            leader.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    //visible for testing
+    int waitingCount() {
+        return waiting.get();
+    }
+
+    private V await(CompletableFuture<V> future, long deadline) {
+        waiting.incrementAndGet();
+        try {
+            return deadline < 0 ? future.get() :
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight call", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Deadline passed while waiting for in-flight call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+CREATE TABLE aggregate_cache (
+  key_hash     BINARY(32)   NOT NULL PRIMARY KEY,
+  authority_id VARCHAR(255) NOT NULL,
+  entry        MEDIUMBLOB   NOT NULL,
+  expires_at   BIGINT       NOT NULL,
+  INDEX aggregate_cache_expires_at_index (expires_at),
+  INDEX aggregate_cache_authority_id_index (authority_id)
+)
+  ENGINE = InnoDB;
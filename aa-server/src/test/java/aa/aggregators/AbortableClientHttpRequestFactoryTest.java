@@ -0,0 +1,65 @@
+package aa.aggregators;
+
+import aa.resilience.Cancellation;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AbortableClientHttpRequestFactoryTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8889);
+
+    @Test
+    public void httpComponentsRequestIsAbortedOnCancel() throws Exception {
+        RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(5000).build();
+        assertAbortedOnCancel(new AbortableHttpComponentsClientHttpRequestFactory(
+            HttpClients.custom().setDefaultRequestConfig(requestConfig).build()));
+    }
+
+    @Test
+    public void simpleRequestIsAbortedOnCancel() throws Exception {
+        AbortableSimpleClientHttpRequestFactory requestFactory = new AbortableSimpleClientHttpRequestFactory();
+        requestFactory.setReadTimeout(5000);
+        assertAbortedOnCancel(requestFactory);
+    }
+
+    private void assertAbortedOnCancel(ClientHttpRequestFactory requestFactory) throws Exception {
+        stubFor(get(urlEqualTo("/slow")).willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(4000)));
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        Cancellation cancellation = new Cancellation();
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(() -> cancellation.run(
+            () -> restTemplate.getForObject("http://localhost:8889/slow", String.class)));
+
+        //wait until the request is sent
+        long timeout = System.currentTimeMillis() + 5000;
+        while (wireMockRule.getAllServeEvents().isEmpty() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        long start = System.currentTimeMillis();
+        cancellation.cancel(Cancellation.Reason.DEADLINE);
+        try {
+            call.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ResourceAccessException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+}
@@ -1,8 +1,10 @@
 package aa.aggregators;
 
+import aa.cache.CacheKeyBuilder;
 import aa.config.AuthorityResolver;
 import aa.model.ArpValue;
 import aa.model.AttributeAuthorityConfiguration;
+import aa.model.RequiredInputAttribute;
 import aa.model.UserAttribute;
 import org.junit.Test;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -12,12 +14,20 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AbstractAttributeAggregatorTest {
 
+    private static final String MAIL = "urn:mace:dir:attribute-def:mail";
+    private static final String SP_ENTITY_ID = "SPentityID";
+
     private static AuthorityResolver authorityResolver;
 
     static {
@@ -73,9 +83,54 @@ public class AbstractAttributeAggregatorTest {
         assertEquals(1, filtered.get(0).getValues().size());
     }
 
+    @Test
+    public void cacheKeyIsCanonical() {
+        AttributeAggregator pseudoEmail = attributeAggregator("pseudo_email");
+        Optional<String> cacheKey = pseudoEmail.cacheKey(Arrays.asList(
+            new UserAttribute(MAIL, Arrays.asList("a@example.org", "b@example.org")),
+            new UserAttribute(SP_ENTITY_ID, singletonList("https://sp"))));
+
+        assertTrue(cacheKey.get().matches("pseudo_email-[0-9a-f]{32}"));
+        assertEquals("pseudo_email", CacheKeyBuilder.attributeAuthorityId(cacheKey.get()));
+        assertEquals(cacheKey, pseudoEmail.cacheKey(Arrays.asList(
+            new UserAttribute(SP_ENTITY_ID, singletonList("https://sp")),
+            new UserAttribute(MAIL, Arrays.asList("b@example.org", "a@example.org", "b@example.org")))));
+        assertNotEquals(cacheKey, pseudoEmail.cacheKey(Arrays.asList(
+            new UserAttribute(MAIL, singletonList("a@example.org")),
+            new UserAttribute(SP_ENTITY_ID, singletonList("https://sp")))));
+        //values are length-prefixed, so moving a value to another attribute changes the key
+        assertNotEquals(pseudoEmail.cacheKey(Arrays.asList(
+            new UserAttribute(MAIL, singletonList("a")),
+            new UserAttribute(SP_ENTITY_ID, singletonList("b")))),
+            pseudoEmail.cacheKey(singletonList(new UserAttribute(MAIL, Arrays.asList("a", "b")))));
+    }
+
+    @Test
+    public void cacheKeyWithoutRequiredValues() {
+        AttributeAggregator pseudoEmail = attributeAggregator("pseudo_email");
+        assertFalse(pseudoEmail.cacheKey(singletonList(new UserAttribute("other", singletonList("value")))).isPresent());
+        assertFalse(pseudoEmail.cacheKey(singletonList(new UserAttribute(MAIL, Collections.emptyList()))).isPresent());
+    }
+
+    @Test
+    public void cacheKeyCaseInsensitive() {
+        AttributeAuthorityConfiguration configuration = new AttributeAuthorityConfiguration("case");
+        configuration.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(MAIL)));
+        AttributeAggregator caseSensitive = attributeAggregator(configuration);
+        List<UserAttribute> lower = singletonList(new UserAttribute(MAIL, singletonList("john.doe@example.org")));
+        List<UserAttribute> upper = singletonList(new UserAttribute(MAIL, singletonList("John.Doe@example.org")));
+        assertNotEquals(caseSensitive.cacheKey(lower), caseSensitive.cacheKey(upper));
+
+        configuration.setCaseInsensitiveInput(true);
+        AttributeAggregator caseInsensitive = attributeAggregator(configuration);
+        assertEquals(caseInsensitive.cacheKey(lower), caseInsensitive.cacheKey(upper));
+    }
+
     private AttributeAggregator attributeAggregator(String key) {
-        AttributeAuthorityConfiguration attributeAuthorityConfiguration =
-            authorityResolver.getConfiguration().getAuthorityById(key);
+        return attributeAggregator(authorityResolver.getConfiguration().getAuthorityById(key));
+    }
+
+    private AttributeAggregator attributeAggregator(AttributeAuthorityConfiguration attributeAuthorityConfiguration) {
         return new AbstractAttributeAggregator(attributeAuthorityConfiguration) {
             @Override
             public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
@@ -1,10 +1,13 @@
 package aa.aggregators;
 
+import aa.analytics.AnalyticsPublisher;
 import aa.cache.NoopUserAttributeCache;
+import aa.cache.RefreshAhead;
 import aa.config.AuthorityResolver;
 import aa.repository.AccountRepository;
 import aa.repository.PseudoEmailRepository;
 import aa.service.AttributeAggregatorService;
+import aa.service.FanOutExecutor;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -33,7 +36,11 @@ public class AttributeAggregatorConfigurationTest {
             new AuthorityResolver(new DefaultResourceLoader(), configFileLocation),
             new NoopUserAttributeCache(),
             Mockito.mock(AccountRepository.class),
-            Mockito.mock(PseudoEmailRepository.class)
+            Mockito.mock(PseudoEmailRepository.class),
+            -1,
+            new FanOutExecutor(10, 10, false),
+            new AnalyticsPublisher(10, 0, 1000),
+            RefreshAhead.DISABLED
         );
     }
 
@@ -0,0 +1,101 @@
+package aa.aggregators;
+
+import aa.resilience.HedgeBudget;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.MalformedURLException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgingClientHttpRequestFactoryTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8889);
+
+    @Test
+    public void hedgeWinsFromSlowRequest() {
+        stubFor(get(urlEqualTo("/hedge")).inScenario("hedge").whenScenarioStateIs(STARTED)
+            .willSetStateTo("hedged")
+            .willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(2000)));
+        stubFor(get(urlEqualTo("/hedge")).inScenario("hedge").whenScenarioStateIs("hedged")
+            .willReturn(aResponse().withStatus(200).withBody("fast")));
+
+        RestTemplate restTemplate = restTemplate(new HedgeBudget(5, 1));
+        long start = System.currentTimeMillis();
+        String body = restTemplate.getForObject("http://localhost:8889/hedge", String.class);
+
+        assertEquals("fast", body);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        verify(2, getRequestedFor(urlEqualTo("/hedge")));
+    }
+
+    @Test
+    public void noHedgeWithoutBudget() {
+        stubFor(get(urlEqualTo("/hedge")).willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(300)));
+
+        RestTemplate restTemplate = restTemplate(new HedgeBudget(0, 0));
+        String body = restTemplate.getForObject("http://localhost:8889/hedge", String.class);
+
+        assertEquals("slow", body);
+        verify(1, getRequestedFor(urlEqualTo("/hedge")));
+    }
+
+    @Test
+    public void noHedgeForFastRequest() {
+        stubFor(get(urlEqualTo("/hedge")).willReturn(aResponse().withStatus(200).withBody("fast")));
+
+        RestTemplate restTemplate = restTemplate(new HedgeBudget(5, 1));
+        assertEquals("fast", restTemplate.getForObject("http://localhost:8889/hedge", String.class));
+        verify(1, getRequestedFor(urlEqualTo("/hedge")));
+    }
+
+    @Test
+    public void abandonedRequestIsAborted() throws Exception {
+        stubFor(get(urlEqualTo("/hedge")).willReturn(aResponse().withStatus(200).withBody("slow").withFixedDelay(5000)));
+
+        RestTemplate restTemplate = restTemplate(new HedgeBudget(0, 0));
+        Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            caller.interrupt();
+        });
+        interrupter.start();
+        long start = System.currentTimeMillis();
+        try {
+            restTemplate.getForObject("http://localhost:8889/hedge", String.class);
+            fail();
+        } catch (ResourceAccessException e) {
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private RestTemplate restTemplate(HedgeBudget hedgeBudget) {
+        try {
+            return new RestTemplate(new HedgingClientHttpRequestFactory(
+                new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(HttpClients.createDefault(),
+                    "http://localhost:8889"), 100, hedgeBudget, 2, "test"));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
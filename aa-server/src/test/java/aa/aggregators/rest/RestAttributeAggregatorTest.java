@@ -1,6 +1,9 @@
 package aa.aggregators.rest;
 
+import aa.cache.SimpleInMemoryUserAttributeCache;
+import aa.config.AuthorityConfiguration;
 import aa.model.*;
+import aa.service.AttributeAggregatorService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -55,7 +58,7 @@ public class RestAttributeAggregatorTest {
                 new UserAttribute("attribute2", Collections.singletonList("value2"))
         );
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
-                .thenReturn(ResponseEntity.ok("response"));
+                .thenReturn(ResponseEntity.ok("{}"));
 
         assertThrows(IllegalArgumentException.class, () -> subject.aggregate(input, Collections.emptyMap()));
     }
@@ -67,7 +70,7 @@ public class RestAttributeAggregatorTest {
                 new Header("headerKey2", "headerValue2")
         ));
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
-                .thenReturn(ResponseEntity.ok("response"));
+                .thenReturn(ResponseEntity.ok("{}"));
 
         HttpHeaders expectedHeaders = new HttpHeaders();
         expectedHeaders.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
@@ -97,7 +100,7 @@ public class RestAttributeAggregatorTest {
                 new UserAttribute("attribute2", Collections.singletonList("value2"))
         );
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
-                .thenReturn(ResponseEntity.ok("response"));
+                .thenReturn(ResponseEntity.ok("{}"));
 
         subject.aggregate(input, Collections.emptyMap());
 
@@ -121,7 +124,7 @@ public class RestAttributeAggregatorTest {
                 new UserAttribute("attribute2", Collections.singletonList("value2"))
         );
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
-                .thenReturn(ResponseEntity.ok("response"));
+                .thenReturn(ResponseEntity.ok("{}"));
 
         subject.aggregate(input, Collections.emptyMap());
 
@@ -137,7 +140,7 @@ public class RestAttributeAggregatorTest {
     void aggregateRequestDefaultToGet() {
         configuration.setRequestMethod(null);
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
-                .thenReturn(ResponseEntity.ok("response"));
+                .thenReturn(ResponseEntity.ok("{}"));
 
         subject.aggregate(Collections.emptyList(), Collections.emptyMap());
 
@@ -378,7 +381,7 @@ public class RestAttributeAggregatorTest {
         when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
                 .thenReturn(ResponseEntity.ok("invalid"));
 
-        List<UserAttribute> result = subject.aggregate(input, Collections.emptyMap());
+        assertThrows(IllegalStateException.class, () -> subject.aggregate(input, Collections.emptyMap()));
 
         verify(restTemplate, times(1)).exchange(
                 eq("https://domain1.com?param1=value1&param2=value2"),
@@ -386,7 +389,28 @@ public class RestAttributeAggregatorTest {
                 any(),
                 any(ParameterizedTypeReference.class)
         );
-        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void aggregateInvalidApiResponseIsNotCached() {
+        configuration.setRequiredInputAttributes(List.of(new RequiredInputAttribute("attribute1")));
+        configuration.setMappings(List.of(new Mapping("field1", "target1", null)));
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(List.of(configuration));
+        AttributeAggregatorService service = new AttributeAggregatorService(List.of(subject), authorityConfiguration,
+                new SimpleInMemoryUserAttributeCache(60_000, 0, 60_000, 60_000));
+        when(restTemplate.exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class)))
+                .thenReturn(ResponseEntity.ok("invalid"));
+        ArpAggregationRequest request = new ArpAggregationRequest(
+                List.of(new UserAttribute("attribute1", Collections.singletonList("value1"))),
+                Collections.singletonMap("target1", List.of(new ArpValue("*", "domain1"))));
+
+        AggregationResult result = service.aggregateBasedOnArp(request);
+        service.aggregateBasedOnArp(request);
+
+        assertEquals(Collections.singleton("domain1"), result.getFailedSources());
+        verify(restTemplate, times(2)).exchange(anyString(), any(), any(), any(ParameterizedTypeReference.class));
+        service.shutdown();
     }
 
 }
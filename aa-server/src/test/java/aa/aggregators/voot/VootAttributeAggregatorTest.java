@@ -10,6 +10,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.client.ResourceAccessException;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -42,12 +43,7 @@ public class VootAttributeAggregatorTest {
 
     @Before
     public void before() {
-        AttributeAuthorityConfiguration configuration = new AttributeAuthorityConfiguration("voot");
-        configuration.setUser("user");
-        configuration.setPassword("password");
-        configuration.setEndpoint("http://localhost:8889/voot");
-        configuration.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(NAME_ID)));
-        subject = new VootAttributeAggregator(configuration, "http://localhost:8889/authorize");
+        subject = new VootAttributeAggregator(configuration(), "http://localhost:8889/authorize");
         stubFor(post(urlEqualTo("/authorize")).withHeader("Authorization", equalTo("Basic " + encodeBase64String("user:password".getBytes())))
             .willReturn(aResponse().withStatus(200).withBody(accessTokenResponse).withHeader("Content-Type", "application/json"))
         );
@@ -95,6 +91,27 @@ public class VootAttributeAggregatorTest {
         assertEquals(14, userAttributes.get(0).getValues().size());
     }
 
+    @Test(expected = ResourceAccessException.class)
+    public void testGetGroupsTimeOut() throws Exception {
+        AttributeAuthorityConfiguration configuration = configuration();
+        configuration.setTimeOut(250);
+        subject = new VootAttributeAggregator(configuration, "http://localhost:8889/authorize");
+        stubFor(get(urlEqualTo("/voot/internal/groups/urn"))
+            .willReturn(aResponse().withStatus(200).withBody(read("voot/groups.json"))
+                .withHeader("Content-Type", "application/json").withFixedDelay(1500)));
+
+        subject.aggregate(input, Collections.emptyMap());
+    }
+
+    private AttributeAuthorityConfiguration configuration() {
+        AttributeAuthorityConfiguration configuration = new AttributeAuthorityConfiguration("voot");
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setEndpoint("http://localhost:8889/voot");
+        configuration.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(NAME_ID)));
+        return configuration;
+    }
+
     private void stubForVoot(String response) {
         stubForVootInScenario(response, 200, Scenario.STARTED, "first_call_done");
     }
@@ -0,0 +1,47 @@
+package aa.analytics;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnalyticsPublisherTest {
+
+    @Test
+    public void eventsAreWrittenByTheWriter() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AnalyticsPublisher subject = new AnalyticsPublisher(16, 1, 10, lines::add);
+
+        subject.publish(new AnalyticsEvent(0, 12, 2, 3, 4, 1, new AuthorityCall[]{
+            new AuthorityCall("voot", AuthorityCall.Outcome.FETCHED, 10, 3),
+            new AuthorityCall("sab", AuthorityCall.Outcome.TIMED_OUT, 12, 0)
+        }));
+        subject.shutdown();
+
+        assertEquals(1, lines.size());
+        assertEquals("ts=1970-01-01T00:00:00Z duration=12 input=2 arp=3 aggregated=4 released=1 " +
+            "authorities=[voot:FETCHED:10:3,sab:TIMED_OUT:12:0]", lines.get(0));
+    }
+
+    @Test
+    public void eventsAreDroppedAfterShutdown() {
+        AnalyticsPublisher subject = new AnalyticsPublisher(16, 1, 10, line -> {
+        });
+        subject.shutdown();
+
+        subject.publish(new AnalyticsEvent(0, 0, 0, 0, 0, 0, new AuthorityCall[0]));
+        assertEquals(1, subject.getDroppedCount());
+    }
+
+    @Test
+    public void sampling() {
+        assertTrue(new AnalyticsPublisher(2, 1, 10, line -> {
+        }).isSampled());
+        assertFalse(new AnalyticsPublisher(2, 0, 10, line -> {
+        }).isSampled());
+    }
+}
@@ -0,0 +1,57 @@
+package aa.analytics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void offerAndDrainInOrder() {
+        RingBuffer<Integer> subject = new RingBuffer<>(3);
+        assertEquals(4, subject.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(subject.offer(i));
+        }
+        assertFalse(subject.offer(4));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, subject.drain(drained::add, 2));
+        assertTrue(subject.offer(4));
+        assertEquals(3, subject.drain(drained::add, 10));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+        assertEquals(0, subject.drain(drained::add, 10));
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        RingBuffer<Integer> subject = new RingBuffer<>(1024);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executorService.execute(() -> {
+                for (int i = 0; i < 200; i++) {
+                    subject.offer(i);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executorService.shutdown();
+
+        int[] sum = new int[1];
+        assertEquals(800, subject.drain(i -> sum[0] += i, 1000));
+        assertEquals(4 * 199 * 200 / 2, sum[0]);
+    }
+}
@@ -0,0 +1,61 @@
+package aa.arp;
+
+import aa.model.ArpValue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledArpTest {
+
+    @Test
+    public void matcher() {
+        Map<String, List<ArpValue>> arp = new HashMap<>();
+        arp.put("isMemberOf", Arrays.asList(
+            new ArpValue("urn:collab:group:surfnet.nl:*", "voot"),
+            new ArpValue("urn:collab:group:example.com:Admins", "voot"),
+            new ArpValue("*", "sbs")));
+        CompiledArp subject = new CompiledArp(arp);
+
+        ArpMatcher voot = subject.matcher("isMemberOf", "voot");
+        assertTrue(voot.matches("urn:collab:group:surfnet.nl:admins"));
+        assertTrue(voot.matches("urn:collab:group:surfnet.nl:"));
+        //prefixes are case sensitive
+        assertFalse(voot.matches("urn:collab:group:SURFNET.nl:admins"));
+        //exact values are not
+        assertTrue(voot.matches("URN:collab:group:example.com:admins"));
+        assertFalse(voot.matches("urn:collab:group:example.com:admins:nope"));
+        assertFalse(voot.matches("urn:collab:group:surfnet"));
+
+        assertTrue(subject.matcher("isMemberOf", "sbs").matches("anything"));
+        assertNull(subject.matcher("isMemberOf", "sab"));
+        assertNull(subject.matcher("eduPersonEntitlement", "voot"));
+        assertEquals(2, subject.getSources().size());
+    }
+
+    @Test
+    public void compilerCachesOnContent() {
+        ArpCompiler compiler = new ArpCompiler(1);
+        CompiledArp compiledArp = compiler.compile(arp("*"));
+        assertSame(compiledArp, compiler.compile(arp("*")));
+
+        CompiledArp other = compiler.compile(arp("urn*"));
+        assertEquals(1, compiler.size());
+        assertSame(other, compiler.compile(arp("urn*")));
+    }
+
+    private Map<String, List<ArpValue>> arp(String value) {
+        Map<String, List<ArpValue>> arp = new HashMap<>();
+        arp.put("name", singletonList(new ArpValue(value, "test")));
+        return arp;
+    }
+}
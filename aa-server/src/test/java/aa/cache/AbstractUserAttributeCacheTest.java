@@ -10,6 +10,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public abstract class AbstractUserAttributeCacheTest {
 
@@ -40,4 +41,24 @@ public abstract class AbstractUserAttributeCacheTest {
         assertFalse(result.isPresent());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testEvict() throws Exception {
+        List<String> requiredKeys = singletonList("name");
+        Optional<String> authorityKey = CacheKeyBuilder.cacheKey("authority", requiredKeys, userAttributes, false);
+        Optional<String> otherUserKey = CacheKeyBuilder.cacheKey("authority", requiredKeys,
+            singletonList(new UserAttribute("name", singletonList("value3"))), false);
+        Optional<String> otherAuthorityKey = CacheKeyBuilder.cacheKey("authority-2", requiredKeys, userAttributes, false);
+        for (Optional<String> cacheKey : asList(key, authorityKey, otherUserKey, otherAuthorityKey)) {
+            getSubject().put(cacheKey, userAttributes);
+        }
+
+        getSubject().evict(key.get());
+        assertFalse(getSubject().get(key).isPresent());
+
+        assertEquals(2, getSubject().evictAuthority("authority"));
+        assertFalse(getSubject().get(authorityKey).isPresent());
+        assertFalse(getSubject().get(otherUserKey).isPresent());
+        assertTrue(getSubject().get(otherAuthorityKey).isPresent());
+    }
+
+}
@@ -0,0 +1,82 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedUserAttributeCacheTest extends AbstractUserAttributeCacheTest {
+
+    private BoundedUserAttributeCache subject =
+        new BoundedUserAttributeCache(250, 0, 0, 100, BoundedUserAttributeCache.ENTRIES, 100, 150);
+
+    private List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+
+    @Override
+    public UserAttributeCache getSubject() {
+        return subject;
+    }
+
+    @Test
+    public void testMaximumEntries() throws IOException {
+        BoundedUserAttributeCache cache = cache(100, BoundedUserAttributeCache.ENTRIES);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Optional.of("key" + i), userAttributes);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(100, cache.weight());
+
+        CacheStatistics.AuthorityStatistics statistics =
+            cache.getStatistics().snapshot().get(CacheKeyBuilder.UNKNOWN_AUTHORITY);
+        assertEquals(1000, statistics.getPuts());
+        assertEquals(900, statistics.getEvictions());
+        assertEquals(100, cache.entryCount());
+        assertEquals(100L * BoundedUserAttributeCache.estimateBytes(new CacheEntry(userAttributes, 0, 0)),
+            cache.estimatedBytes());
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesSurviveScan() throws IOException {
+        BoundedUserAttributeCache cache = cache(100, BoundedUserAttributeCache.ENTRIES);
+        for (int i = 0; i < 50; i++) {
+            cache.put(Optional.of("hot" + i), userAttributes);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertTrue(cache.get(Optional.of("hot" + i)).isPresent());
+            }
+        }
+        //users that log in only once
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(Optional.of("once" + i), userAttributes);
+        }
+        long hits = 0;
+        for (int i = 0; i < 50; i++) {
+            hits += cache.get(Optional.of("hot" + i)).isPresent() ? 1 : 0;
+        }
+        assertTrue("hits " + hits, hits >= 45);
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void testMaximumBytes() throws IOException {
+        int entryBytes = BoundedUserAttributeCache.estimateBytes(new CacheEntry(userAttributes, 0, 0));
+        BoundedUserAttributeCache cache = cache(entryBytes * 10L, BoundedUserAttributeCache.BYTES);
+        for (int i = 0; i < 100; i++) {
+            cache.put(Optional.of("key" + i), userAttributes);
+        }
+        assertEquals(10, cache.size());
+        assertTrue(cache.weight() <= entryBytes * 10L);
+    }
+
+    private BoundedUserAttributeCache cache(long maximumWeight, ToIntFunction<CacheEntry> weigher) {
+        return new BoundedUserAttributeCache(60_000, 0, 0, maximumWeight, weigher, 100, 1000);
+    }
+}
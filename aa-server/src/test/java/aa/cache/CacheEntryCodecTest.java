@@ -0,0 +1,42 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CacheEntryCodecTest {
+
+    @Test
+    public void encodeAndDecode() throws IOException {
+        List<UserAttribute> userAttributes = Arrays.asList(
+            new UserAttribute("urn:mace:dir:attribute-def:isMemberOf", Arrays.asList("group1", "gröüp2", ""), "voot"),
+            new UserAttribute("name", Arrays.asList("value"), null));
+        CacheEntry cacheEntry = CacheEntryCodec.decode(CacheEntryCodec.encode(new CacheEntry(userAttributes, 1L, 2L)));
+
+        assertEquals(userAttributes, cacheEntry.getUserAttributes());
+        assertEquals(1L, cacheEntry.getStaleAt());
+        assertEquals(2L, cacheEntry.getExpiresAt());
+    }
+
+    @Test
+    public void negativeEntry() throws IOException {
+        byte[] bytes = CacheEntryCodec.encode(CacheEntry.negative(5L));
+        CacheEntry cacheEntry = CacheEntryCodec.decode(bytes);
+
+        assertEquals(9, bytes.length);
+        assertTrue(cacheEntry.isNegative());
+        assertEquals(5L, cacheEntry.getExpiresAt());
+    }
+
+    @Test(expected = IOException.class)
+    public void corrupt() throws IOException {
+        byte[] bytes = CacheEntryCodec.encode(new CacheEntry(Arrays.asList(new UserAttribute("name", Arrays.asList("value"))), 1L, 2L));
+        CacheEntryCodec.decode(Arrays.copyOf(bytes, bytes.length - 3));
+    }
+}
@@ -0,0 +1,202 @@
+package aa.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Stand-in for Redis in tests that supports GET, SET with PX, DEL, PING and SCAN with MATCH, which returns all
+ * matching keys in one page.
+ */
+public class FakeRedisServer {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+    private final AtomicInteger commands = new AtomicInteger();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean hanging;
+
+    public FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        this.acceptor = new Thread(this::accept, "fake-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getCommandCount() {
+        return commands.get();
+    }
+
+    //reads the commands, but does not reply until hanging is switched off
+    public void setHanging(boolean hanging) {
+        this.hanging = hanging;
+    }
+
+    //also closes the open connections and waits until no new connections are accepted
+    public void stop() throws IOException {
+        serverSocket.close();
+        try {
+            acceptor.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                Thread handler = new Thread(() -> handle(socket), "fake-redis-connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException e) {
+            //stopped
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                if (in.read() != '*') {
+                    return;
+                }
+                byte[][] command = new byte[Integer.parseInt(readLine(in))][];
+                for (int i = 0; i < command.length; i++) {
+                    in.read();
+                    command[i] = new byte[Integer.parseInt(readLine(in))];
+                    int offset = 0;
+                    while (offset < command[i].length) {
+                        offset += in.read(command[i], offset, command[i].length - offset);
+                    }
+                    in.read();
+                    in.read();
+                }
+                commands.incrementAndGet();
+                while (hanging) {
+                    Thread.sleep(10);
+                }
+                execute(command, out);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            //client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private void execute(byte[][] command, OutputStream out) throws IOException {
+        String name = new String(command[0], StandardCharsets.UTF_8).toUpperCase();
+        String key = command.length > 1 ? new String(command[1], StandardCharsets.UTF_8) : null;
+        switch (name) {
+            case "PING":
+                out.write("+PONG\r\n".getBytes(StandardCharsets.UTF_8));
+                break;
+            case "SET":
+                values.put(key, command[2]);
+                if (command.length > 4) {
+                    expiries.put(key, System.currentTimeMillis() + Long.parseLong(new String(command[4], StandardCharsets.UTF_8)));
+                }
+                out.write("+OK\r\n".getBytes(StandardCharsets.UTF_8));
+                break;
+            case "GET":
+                Long expiresAt = expiries.get(key);
+                if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+                    values.remove(key);
+                    expiries.remove(key);
+                }
+                byte[] value = values.get(key);
+                if (value == null) {
+                    out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    out.write(value);
+                    out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+            case "DEL":
+                int deleted = 0;
+                for (int i = 1; i < command.length; i++) {
+                    String deletedKey = new String(command[i], StandardCharsets.UTF_8);
+                    expiries.remove(deletedKey);
+                    deleted += values.remove(deletedKey) != null ? 1 : 0;
+                }
+                out.write((":" + deleted + "\r\n").getBytes(StandardCharsets.UTF_8));
+                break;
+            case "SCAN":
+                Pattern pattern = Pattern.compile(command.length > 3 ? globToRegex(new String(command[3], StandardCharsets.UTF_8)) : ".*");
+                List<String> keys = values.keySet().stream().filter(k -> pattern.matcher(k).matches()).collect(Collectors.toList());
+                out.write("*2\r\n$1\r\n0\r\n".getBytes(StandardCharsets.UTF_8));
+                out.write(("*" + keys.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for (String matched : keys) {
+                    byte[] bytes = matched.getBytes(StandardCharsets.UTF_8);
+                    out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    out.write(bytes);
+                    out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+            default:
+                out.write(("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    //supports * and ? and escaped characters
+    private String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                if (c == '\\' && i + 1 < glob.length()) {
+                    c = glob.charAt(++i);
+                }
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("closed");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package aa.cache;
+
+import aa.AbstractIntegrationTest;
+import aa.model.UserAttribute;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcUserAttributeCacheTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void putGetAndClearExpired() throws Exception {
+        JdbcUserAttributeCache cache = new JdbcUserAttributeCache(60_000, 0, 100, jdbcTemplate, -1, 1);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        cache.put(Optional.of("key"), userAttributes);
+        cache.put(Optional.of("key"), userAttributes);
+        cache.put(Optional.of("empty1"), Collections.emptyList());
+        cache.put(Optional.of("empty2"), Collections.emptyList());
+
+        assertEquals(userAttributes, cache.get(Optional.of("key")).get());
+        assertTrue(cache.getEntry(Optional.of("empty1")).get().isNegative());
+
+        Thread.sleep(150);
+        assertFalse(cache.getEntry(Optional.of("empty1")).isPresent());
+        assertEquals(2, cache.clearExpiredAggregates());
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM aggregate_cache", Integer.class));
+    }
+}
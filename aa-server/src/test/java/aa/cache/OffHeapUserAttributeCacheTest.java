@@ -0,0 +1,98 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapUserAttributeCacheTest extends AbstractUserAttributeCacheTest {
+
+    private OffHeapUserAttributeCache subject = new OffHeapUserAttributeCache(250, 0, 0, 2, 4096);
+
+    private List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+
+    @Override
+    public UserAttributeCache getSubject() {
+        return subject;
+    }
+
+    @Test
+    public void testOldestSlabIsEvicted() throws IOException {
+        OffHeapUserAttributeCache cache = new OffHeapUserAttributeCache(60_000, 0, 0, 4, 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Optional.of("key" + i), userAttributes);
+        }
+        assertTrue(cache.size() < 1000);
+        assertFalse(cache.get(Optional.of("key0")).isPresent());
+        assertEquals(userAttributes, cache.get(Optional.of("key999")).get());
+    }
+
+    @Test
+    public void testReplacedEntryIsNotEvictedWithOldSlab() throws IOException {
+        OffHeapUserAttributeCache cache = new OffHeapUserAttributeCache(60_000, 0, 0, 2, 1024);
+        List<UserAttribute> replaced = singletonList(new UserAttribute("name", singletonList("replaced"), "source"));
+        cache.put(Optional.of("key"), userAttributes);
+        int i = 0;
+        //fill the first slab
+        while (cache.size() < 10) {
+            cache.put(Optional.of("filler" + i++), userAttributes);
+        }
+        for (int j = 0; j < 20; j++) {
+            cache.put(Optional.of("filler" + i++), userAttributes);
+        }
+        cache.put(Optional.of("key"), replaced);
+        //wrap around to the first slab again, evicting its records
+        for (int j = 0; j < 15; j++) {
+            cache.put(Optional.of("filler" + i++), userAttributes);
+        }
+        assertEquals(replaced, cache.get(Optional.of("key")).get());
+    }
+
+    @Test
+    public void testConcurrentGetsDuringSlabReuse() throws Exception {
+        OffHeapUserAttributeCache cache = new OffHeapUserAttributeCache(60_000, 0, 0, 2, 1024);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20_000; i++) {
+                    cache.put(Optional.of("key" + i % 100),
+                        singletonList(new UserAttribute("name", singletonList("value" + i % 100), "source")));
+                }
+            } catch (IOException e) {
+                error.set(e.toString());
+            } finally {
+                writing.set(false);
+            }
+        });
+        writer.start();
+        //every hit must be the record of its own key, never a record of the reused slab
+        while (writing.get() && error.get() == null) {
+            for (int i = 0; i < 100; i++) {
+                Optional<List<UserAttribute>> hit = cache.get(Optional.of("key" + i));
+                if (hit.isPresent() && !hit.get().get(0).getValues().equals(singletonList("value" + i))) {
+                    error.set("key" + i + " returned " + hit.get());
+                }
+            }
+        }
+        writer.join();
+        assertNull(error.get());
+    }
+
+    @Test
+    public void testEntryLargerThanSlab() throws IOException {
+        OffHeapUserAttributeCache cache = new OffHeapUserAttributeCache(60_000, 0, 0, 2, 16);
+        cache.put(Optional.of("key"), userAttributes);
+        assertFalse(cache.get(Optional.of("key")).isPresent());
+    }
+}
@@ -0,0 +1,135 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RedisUserAttributeCacheTest extends AbstractUserAttributeCacheTest {
+
+    private FakeRedisServer server = new FakeRedisServer();
+
+    private RedisUserAttributeCache subject = cache(250, 100);
+
+    private List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+
+    public RedisUserAttributeCacheTest() throws IOException {
+    }
+
+    @Override
+    public UserAttributeCache getSubject() {
+        return subject;
+    }
+
+    @After
+    public void after() throws IOException {
+        subject.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void testSharedBetweenNodes() throws IOException {
+        RedisUserAttributeCache otherNode = cache(60_000, 0);
+        RedisUserAttributeCache node = cache(60_000, 0);
+        node.put(Optional.of("key"), userAttributes);
+        node.put(Optional.of("empty"), Collections.emptyList(), new CachePolicy(-1, 60_000, false));
+        //replies on a connection are in order, so the puts have been processed when this get returns
+        node.get(Optional.of("empty"));
+
+        assertEquals(userAttributes, otherNode.get(Optional.of("key")).get());
+        assertTrue(otherNode.getEntry(Optional.of("empty")).get().isNegative());
+        otherNode.shutdown();
+        node.shutdown();
+    }
+
+    @Test
+    public void testNearCache() throws IOException {
+        RedisUserAttributeCache cache = cache(60_000, 100);
+        cache.put(Optional.of("key"), userAttributes);
+        awaitStored("key");
+        int commands = server.getCommandCount();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(userAttributes, cache.get(Optional.of("key")).get());
+        }
+        assertEquals(commands, server.getCommandCount());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testPipelinedConcurrentGets() throws Exception {
+        RedisUserAttributeCache cache = cache(60_000, 0);
+        cache.put(Optional.of("key"), userAttributes);
+        List<CompletableFuture<Optional<List<UserAttribute>>>> futures = IntStream.range(0, 50)
+            .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cache.get(Optional.of(i % 2 == 0 ? "key" : "missing"));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }))
+            .collect(Collectors.toList());
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i % 2 == 0, futures.get(i).get().isPresent());
+        }
+        cache.shutdown();
+    }
+
+    @Test
+    public void testRedisDown() throws IOException {
+        RedisUserAttributeCache cache = cache(60_000, 0);
+        server.stop();
+        cache.put(Optional.of("key"), userAttributes);
+        assertFalse(cache.get(Optional.of("key")).isPresent());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testRedisHanging() throws Exception {
+        RedisUserAttributeCache cache = new RedisUserAttributeCache(60_000, 0, 0, "localhost", server.getPort(), null,
+            "aa:", 50, 0, 5000);
+        server.setHanging(true);
+        List<CompletableFuture<Long>> durations = IntStream.range(0, 20)
+            .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    assertFalse(cache.get(Optional.of("key" + i)).isPresent());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return System.currentTimeMillis() - start;
+            }))
+            .collect(Collectors.toList());
+        for (CompletableFuture<Long> duration : durations) {
+            assertTrue(duration.get() < 500);
+        }
+        server.setHanging(false);
+        cache.shutdown();
+    }
+
+    //puts are asynchronous
+    private void awaitStored(String key) throws IOException {
+        RedisUserAttributeCache otherNode = cache(60_000, 0);
+        long timeout = System.currentTimeMillis() + 1000;
+        while (!otherNode.get(Optional.of(key)).isPresent() && System.currentTimeMillis() < timeout) {
+            Thread.yield();
+        }
+        otherNode.shutdown();
+    }
+
+    private RedisUserAttributeCache cache(long cacheDuration, int nearCacheEntries) {
+        return new RedisUserAttributeCache(cacheDuration, 0, 0, "localhost", server.getPort(), null, "aa:",
+            1000, nearCacheEntries, 5000);
+    }
+}
@@ -0,0 +1,102 @@
+package aa.cache;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class RefreshAheadTest {
+
+    private RefreshAhead subject = new RefreshAhead(60_000, 3, 10, 60_000);
+
+    private AtomicInteger refreshes = new AtomicInteger();
+
+    @After
+    public void after() {
+        subject.shutdown();
+    }
+
+    @Test
+    public void testOnlyHotKeysAreRefreshed() {
+        CacheEntry cacheEntry = cacheEntry(30_000);
+        subject.onHit("cold", cacheEntry, refreshes::incrementAndGet);
+        subject.onHit("hot", cacheEntry, refreshes::incrementAndGet);
+        subject.onHit("hot", cacheEntry, refreshes::incrementAndGet);
+        assertEquals(0, refreshes.get());
+
+        //within the refresh-ahead window, so refreshed right away
+        subject.onHit("hot", cacheEntry, refreshes::incrementAndGet);
+        assertEquals(1, refreshes.get());
+        assertEquals(0, subject.size());
+    }
+
+    @Test
+    public void testScheduledRefresh() {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        RefreshAhead refreshAhead = new RefreshAhead(100, 3, 10, 60_000, now::get);
+        CacheEntry cacheEntry = cacheEntry(now.get(), 1100);
+        for (int i = 0; i < 3; i++) {
+            refreshAhead.onHit("hot", cacheEntry, refreshes::incrementAndGet);
+        }
+        assertEquals(1, refreshAhead.size());
+        refreshAhead.refreshDue();
+        assertEquals(0, refreshes.get());
+
+        //the timer wheel has a resolution of about a second
+        now.addAndGet(2100);
+        refreshAhead.refreshDue();
+        assertEquals(1, refreshes.get());
+        assertEquals(0, refreshAhead.size());
+
+        //a refresh runs once, the next hit schedules it again
+        refreshAhead.refreshDue();
+        assertEquals(1, refreshes.get());
+        refreshAhead.onHit("hot", cacheEntry(now.get(), 1100), refreshes::incrementAndGet);
+        assertEquals(1, refreshAhead.size());
+        refreshAhead.shutdown();
+    }
+
+    @Test
+    public void testRefreshIsNotDueYet() {
+        CacheEntry cacheEntry = cacheEntry(3_600_000);
+        for (int i = 0; i < 5; i++) {
+            subject.onHit("key", cacheEntry, refreshes::incrementAndGet);
+        }
+        subject.refreshDue();
+        assertEquals(0, refreshes.get());
+        assertEquals(1, subject.size());
+    }
+
+    @Test
+    public void testMaximumEntries() {
+        CacheEntry cacheEntry = cacheEntry(3_600_000);
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 3; j++) {
+                subject.onHit("key" + i, cacheEntry, refreshes::incrementAndGet);
+            }
+        }
+        assertEquals(10, subject.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        CacheEntry cacheEntry = cacheEntry(30_000);
+        for (int i = 0; i < 5; i++) {
+            RefreshAhead.DISABLED.onHit("key", cacheEntry, refreshes::incrementAndGet);
+        }
+        assertEquals(0, RefreshAhead.DISABLED.size());
+    }
+
+    private CacheEntry cacheEntry(long staleIn) {
+        return cacheEntry(System.currentTimeMillis(), staleIn);
+    }
+
+    private CacheEntry cacheEntry(long now, long staleIn) {
+        long staleAt = now + staleIn;
+        return new CacheEntry(Collections.emptyList(), staleAt, staleAt);
+    }
+}
@@ -4,11 +4,16 @@ import aa.model.UserAttribute;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class SimpleInMemoryUserAttributeCacheTest extends AbstractUserAttributeCacheTest {
 
@@ -28,4 +33,150 @@ public class SimpleInMemoryUserAttributeCacheTest extends AbstractUserAttributeC
         assertFalse(userAttributes.isPresent());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCacheInactiveExceptForAuthorityPolicy() throws IOException {
+        UserAttributeCache cache = new SimpleInMemoryUserAttributeCache(-1, 150);
+        Optional<String> key = Optional.of("key");
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        cache.put(key, userAttributes, new CachePolicy(60_000, -1, false));
+        assertEquals(userAttributes, cache.get(key).get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        UserAttributeCache cache = new SimpleInMemoryUserAttributeCache(100, 300, 50);
+        Optional<String> key = Optional.of("key");
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        cache.put(key, userAttributes);
+        assertFalse(cache.getEntry(key).get().isStale(System.currentTimeMillis()));
+
+        Thread.sleep(200);
+        CacheEntry cacheEntry = cache.getEntry(key).get();
+        assertTrue(cacheEntry.isStale(System.currentTimeMillis()));
+        assertEquals(userAttributes, cacheEntry.getUserAttributes());
+
+        Thread.sleep(300);
+        assertFalse(cache.getEntry(key).isPresent());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        UserAttributeCache cache = new SimpleInMemoryUserAttributeCache(60_000, 0, 100, 50);
+        Optional<String> key = Optional.of("key");
+        cache.put(key, Collections.emptyList());
+        assertTrue(cache.getEntry(key).get().isNegative());
+
+        Thread.sleep(200);
+        assertFalse(cache.getEntry(key).isPresent());
+
+        cache.put(key, Collections.emptyList(), new CachePolicy(-1, 0, false));
+        assertFalse(cache.getEntry(key).isPresent());
+    }
+
+    @Test
+    public void testNegativeCachingDisabled() throws IOException {
+        UserAttributeCache cache = new SimpleInMemoryUserAttributeCache(60_000, 150);
+        Optional<String> key = Optional.of("key");
+        cache.put(key, Collections.emptyList());
+        assertFalse(cache.getEntry(key).isPresent());
+
+        cache.put(key, Collections.emptyList(), new CachePolicy(-1, 60_000, false));
+        assertTrue(cache.getEntry(key).get().isNegative());
+    }
+
+    @Test
+    public void testCachePolicy() throws Exception {
+        UserAttributeCache cache = new SimpleInMemoryUserAttributeCache(60_000, 50);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        Optional<String> shortLived = Optional.of("shortLived");
+        Optional<String> uncached = Optional.of("uncached");
+        Optional<String> notCached = Optional.of("notCached");
+
+        cache.put(shortLived, userAttributes, new CachePolicy(100, -1, false));
+        cache.put(uncached, userAttributes, new CachePolicy(-1, -1, true));
+        cache.put(notCached, userAttributes, new CachePolicy(0, -1, false));
+        assertEquals(userAttributes, cache.get(shortLived).get());
+        assertFalse(cache.get(uncached).isPresent());
+        assertFalse(cache.get(notCached).isPresent());
+
+        Thread.sleep(200);
+        assertFalse(cache.get(shortLived).isPresent());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        SimpleInMemoryUserAttributeCache cache = new SimpleInMemoryUserAttributeCache(100, 50);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        Optional<String> key = CacheKeyBuilder.cacheKey("orcid", singletonList("name"), userAttributes, false);
+        cache.get(key);
+        cache.put(key, userAttributes);
+        cache.get(key);
+        cache.get(key);
+        assertEquals(1, cache.entryCount());
+        assertEquals(BoundedUserAttributeCache.estimateBytes(cache.inspect(key.get()).get()), cache.estimatedBytes());
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (cache.entryCount() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        CacheStatistics.AuthorityStatistics statistics = cache.getStatistics().snapshot().get("orcid");
+        assertEquals(2, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getPuts());
+        assertEquals(1, statistics.getExpiries());
+        assertEquals(2d / 3, statistics.getHitRatio(), 0.001);
+        cache.shutdown();
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() throws Exception {
+        SimpleInMemoryUserAttributeCache cache = new SimpleInMemoryUserAttributeCache(100, 50);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        for (int i = 0; i < 100; i++) {
+            cache.put(Optional.of("key" + i), userAttributes);
+        }
+        assertEquals(100, cache.size());
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (cache.size() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, cache.size());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testConcurrentPutsAndEvictsAreScheduled() throws Exception {
+        SimpleInMemoryUserAttributeCache cache = new SimpleInMemoryUserAttributeCache(100, 50);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String prefix = "thread" + t + "-";
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    try {
+                        cache.put(Optional.of(prefix + i), userAttributes);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (i % 10 == 0) {
+                        cache.evict(prefix + i);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(900, cache.size());
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (cache.size() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, cache.size());
+        cache.shutdown();
+    }
+}
@@ -0,0 +1,66 @@
+package aa.cache;
+
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TieredUserAttributeCacheTest extends AbstractUserAttributeCacheTest {
+
+    private SimpleInMemoryUserAttributeCache firstTier = new SimpleInMemoryUserAttributeCache(60_000, 1000);
+    private SimpleInMemoryUserAttributeCache secondTier = new SimpleInMemoryUserAttributeCache(60_000, 1000);
+    private TieredUserAttributeCache subject = new TieredUserAttributeCache(250, 0, 0, firstTier, secondTier, 60_000);
+
+    @Override
+    public UserAttributeCache getSubject() {
+        return subject;
+    }
+
+    @Test
+    public void testSecondTierHitIsCopiedToFirstTier() throws Exception {
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        Optional<String> key = Optional.of("key");
+        //put by another node
+        secondTier.put(key, userAttributes);
+        long expiresAt = secondTier.getEntry(key).get().getExpiresAt();
+
+        assertEquals(0, firstTier.size());
+        assertEquals(userAttributes, subject.get(key).get());
+        assertEquals(1, firstTier.size());
+        assertEquals(expiresAt, firstTier.getEntry(key).get().getExpiresAt());
+    }
+
+    @Test
+    public void testFirstTierCopyIsShortLived() throws Exception {
+        TieredUserAttributeCache tiered = new TieredUserAttributeCache(60_000, 0, 0, firstTier, secondTier, 100);
+        List<UserAttribute> userAttributes = singletonList(new UserAttribute("name", singletonList("value"), "source"));
+        Optional<String> key = Optional.of("key");
+        long start = System.currentTimeMillis();
+        tiered.put(key, userAttributes);
+        assertTrue(firstTier.getEntry(key).get().getExpiresAt() <= System.currentTimeMillis() + 100);
+        assertTrue(secondTier.getEntry(key).get().getExpiresAt() >= start + 60_000);
+
+        //evicted by another node
+        secondTier.evict(key.get());
+        assertTrue(tiered.get(key).isPresent());
+        long timeout = System.currentTimeMillis() + 5000;
+        while (tiered.get(key).isPresent() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertFalse(tiered.get(key).isPresent());
+    }
+
+    @Test
+    public void testPutInBothTiers() throws Exception {
+        Optional<String> key = Optional.of("key");
+        subject.put(key, singletonList(new UserAttribute("name", singletonList("value"), "source")));
+        assertTrue(firstTier.get(key).isPresent());
+        assertTrue(secondTier.get(key).isPresent());
+    }
+}
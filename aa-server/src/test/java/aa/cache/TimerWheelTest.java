@@ -0,0 +1,76 @@
+package aa.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    @Test
+    public void advance() {
+        TimerWheel<String> timerWheel = new TimerWheel<>(START);
+        timerWheel.schedule("second", START + 1_500);
+        timerWheel.schedule("minute", START + TimeUnit.MINUTES.toMillis(1));
+        timerWheel.schedule("hour", START + TimeUnit.HOURS.toMillis(1));
+        timerWheel.schedule("week", START + TimeUnit.DAYS.toMillis(7));
+        timerWheel.schedule("year", START + TimeUnit.DAYS.toMillis(365));
+
+        assertEquals(Collections.emptyList(), advance(timerWheel, START + 1_000));
+        assertEquals(Collections.singletonList("second"), advance(timerWheel, START + 3_000));
+        assertEquals(Collections.emptyList(), advance(timerWheel, START + TimeUnit.SECONDS.toMillis(59)));
+        assertEquals(Collections.singletonList("minute"), advance(timerWheel, START + TimeUnit.SECONDS.toMillis(62)));
+        assertEquals(Collections.singletonList("hour"), advance(timerWheel, START + TimeUnit.MINUTES.toMillis(61)));
+        assertEquals(Collections.emptyList(), advance(timerWheel, START + TimeUnit.DAYS.toMillis(6)));
+        assertEquals(Collections.singletonList("week"), advance(timerWheel, START + TimeUnit.DAYS.toMillis(7) + 2_000));
+        assertEquals(1, timerWheel.size());
+        assertEquals(Collections.singletonList("year"), advance(timerWheel, START + TimeUnit.DAYS.toMillis(400)));
+        assertEquals(0, timerWheel.size());
+    }
+
+    @Test
+    public void advanceInSmallSteps() {
+        TimerWheel<String> timerWheel = new TimerWheel<>(START);
+        List<Long> expiresAt = Arrays.asList(5_000L, 70_000L, 4_000_000L, 5_000_000L);
+        expiresAt.forEach(millis -> timerWheel.schedule(String.valueOf(millis), START + millis));
+
+        List<String> expired = new ArrayList<>();
+        for (long now = START; now <= START + 6_000_000L; now += 250) {
+            long time = now;
+            timerWheel.advance(now, key -> {
+                //never expired early, and at most one tick late
+                long late = time - (START + Long.parseLong(key));
+                assertTrue(key + " " + late, late >= 0 && late < 2_048);
+                expired.add(key);
+            });
+        }
+        assertEquals(Arrays.asList("5000", "70000", "4000000", "5000000"), expired);
+    }
+
+    @Test
+    public void rescheduleAndCancel() {
+        TimerWheel<String> timerWheel = new TimerWheel<>(START);
+        timerWheel.schedule("rescheduled", START + 1_000);
+        timerWheel.schedule("rescheduled", START + 100_000);
+        timerWheel.schedule("cancelled", START + 1_000);
+        timerWheel.cancel("cancelled");
+        timerWheel.schedule("due", START - 1);
+
+        assertEquals(Collections.singletonList("due"), advance(timerWheel, START + 5_000));
+        assertEquals(Collections.singletonList("rescheduled"), advance(timerWheel, START + 200_000));
+    }
+
+    private List<String> advance(TimerWheel<String> timerWheel, long now) {
+        List<String> expired = new ArrayList<>();
+        timerWheel.advance(now, expired::add);
+        return expired;
+    }
+}
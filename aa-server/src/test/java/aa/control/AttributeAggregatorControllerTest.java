@@ -1,14 +1,22 @@
 package aa.control;
 
 import aa.AbstractIntegrationTest;
+import aa.model.AggregationTrailer;
 import aa.model.ArpAggregationRequest;
 import aa.model.ArpValue;
+import aa.model.BatchAggregationRequest;
+import aa.model.BatchAggregationResult;
+import aa.model.BatchAggregationUser;
+import aa.model.SourceUserAttributes;
 import aa.model.UserAttribute;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
@@ -17,12 +25,16 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static aa.aggregators.AttributeAggregator.*;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
         value = {"attribute_authorities_config_path=classpath:testAttributeAuthorities.yml"})
@@ -65,4 +77,52 @@ public class AttributeAggregatorControllerTest extends AbstractIntegrationTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testStreamingAggregateWithArp() throws Exception {
+        UserAttribute input = new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("urn:collab:person:example.com:admin"));
+        Map<String, List<ArpValue>> arp = singletonMap(ORCID, singletonList(new ArpValue("*", "aa1")));
+        HttpHeaders streamingHeaders = new HttpHeaders();
+        streamingHeaders.putAll(headers);
+        streamingHeaders.set(HttpHeaders.ACCEPT, "application/x-ndjson");
+
+        RequestEntity<ArpAggregationRequest> requestEntity = new RequestEntity<>(new ArpAggregationRequest(singletonList(input), arp),
+                streamingHeaders, HttpMethod.POST, new URI("http://localhost:" + port + "/aa/api/client/attribute/aggregation"));
+
+        ResponseEntity<String> response = restTemplate.exchange(requestEntity, String.class);
+        assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+
+        String[] lines = response.getBody().split("\n");
+        assertEquals(2, lines.length);
+        SourceUserAttributes sourceUserAttributes = new ObjectMapper().readValue(lines[0], SourceUserAttributes.class);
+        assertEquals("aa1", sourceUserAttributes.getSource());
+        assertEquals(1, sourceUserAttributes.getUserAttributes().size());
+        AggregationTrailer trailer = new ObjectMapper().readValue(lines[1], AggregationTrailer.class);
+        assertTrue(trailer.isComplete());
+        assertTrue(trailer.getTimedOutSources().isEmpty());
+    }
+
+    @Test
+    public void testBatchAggregateWithArp() throws Exception {
+        List<BatchAggregationUser> users = Arrays.asList(
+                new BatchAggregationUser("admin", singletonList(new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("urn:collab:person:example.com:admin")))),
+                new BatchAggregationUser("john", singletonList(new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("urn:collab:person:example.com:john")))));
+        Map<String, List<ArpValue>> arp = singletonMap(ORCID, singletonList(new ArpValue("*", "aa1")));
+
+        RequestEntity<BatchAggregationRequest> requestEntity = new RequestEntity<>(new BatchAggregationRequest(users, arp, null),
+                headers, HttpMethod.POST, new URI("http://localhost:" + port + "/aa/api/internal/attribute/aggregation/batch"));
+
+        ResponseEntity<String> response = new TestRestTemplate("eb", "secret").exchange(requestEntity, String.class);
+        assertEquals(200, response.getStatusCode().value());
+
+        String[] lines = response.getBody().split("\n");
+        assertEquals(2, lines.length);
+        Set<String> ids = new HashSet<>();
+        for (String line : lines) {
+            BatchAggregationResult result = new ObjectMapper().readValue(line, BatchAggregationResult.class);
+            ids.add(result.getId());
+            assertEquals(1, result.getUserAttributes().size());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("admin", "john")), ids);
+    }
+
+}
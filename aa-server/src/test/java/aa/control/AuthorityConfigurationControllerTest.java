@@ -3,14 +3,17 @@ package aa.control;
 import aa.AbstractIntegrationTest;
 import aa.config.AuthorityConfiguration;
 import org.junit.Test;
+import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 
 import java.net.URI;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unchecked")
 public class AuthorityConfigurationControllerTest extends AbstractIntegrationTest {
@@ -32,4 +35,13 @@ public class AuthorityConfigurationControllerTest extends AbstractIntegrationTes
         assertEquals(1, authorityConfiguration.getAuthorityById("aa2").getAttributes().size());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testEffectiveTimeOuts() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.GET, new URI("http://localhost:" + port + "/aa/api/internal/authorityConfiguration/timeOuts"));
+        ResponseEntity<Map> response = new TestRestTemplate("eb", "secret").exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().containsKey("aa1"));
+    }
+
+}
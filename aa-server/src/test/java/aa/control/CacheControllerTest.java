@@ -0,0 +1,70 @@
+package aa.control;
+
+import aa.AbstractIntegrationTest;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unchecked")
+public class CacheControllerTest extends AbstractIntegrationTest {
+
+    @Override
+    protected boolean isBasicAuthenticated() {
+        return true;
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.GET, new URI("http://localhost:" + port + "/aa/api/internal/cache/statistics"));
+        ResponseEntity<Map> response = restTemplate.exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().containsKey("entries"));
+        assertTrue(response.getBody().containsKey("estimatedBytes"));
+        assertTrue(response.getBody().containsKey("authorities"));
+    }
+
+    @Test
+    public void testEntryNotFound() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.GET, new URI("http://localhost:" + port + "/aa/api/internal/cache/entries/aa1-00000000000000000000000000000000"));
+        ResponseEntity<Map> response = restTemplate.exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void testUserEntries() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.GET, new URI("http://localhost:" + port + "/aa/api/internal/cache/users/urn:collab:person:example.com:admin?authority=orcid"));
+        ResponseEntity<Map> response = restTemplate.exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(response.getBody().isEmpty());
+    }
+
+    @Test
+    public void testEvictUser() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.DELETE, new URI("http://localhost:" + port + "/aa/api/internal/cache/users/urn:collab:person:example.com:admin?authority=orcid"));
+        ResponseEntity<Map> response = restTemplate.exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(singletonList("orcid"), response.getBody().get("authorities"));
+    }
+
+    @Test
+    public void testEvictUnknownAuthority() throws Exception {
+        RequestEntity requestEntity = new RequestEntity(headers, HttpMethod.DELETE, new URI("http://localhost:" + port + "/aa/api/internal/cache/authorities/nope"));
+        ResponseEntity<Map> response = restTemplate.exchange(requestEntity, Map.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+}
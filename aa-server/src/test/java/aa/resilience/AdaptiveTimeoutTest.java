@@ -0,0 +1,47 @@
+package aa.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutTest {
+
+    @Test
+    public void ceilingUntilEnoughSamples() {
+        AdaptiveTimeout subject = new AdaptiveTimeout(new LatencyHistogram(60_000, 6), 99, 50, 100, 2000, 10);
+        for (int i = 0; i < 9; i++) {
+            subject.record(10);
+        }
+        assertEquals(2000, subject.currentTimeoutMillis());
+    }
+
+    @Test
+    public void percentilePlusMarginClampedByFloor() {
+        AdaptiveTimeout subject = new AdaptiveTimeout(new LatencyHistogram(60_000, 6), 99, 50, 100, 2000, 10);
+        for (int i = 0; i < 10; i++) {
+            subject.record(10);
+        }
+        assertEquals(100, subject.currentTimeoutMillis());
+    }
+
+    @Test
+    public void percentilePlusMargin() {
+        AdaptiveTimeout subject = new AdaptiveTimeout(new LatencyHistogram(60_000, 6), 50, 50, 100, 2000, 10);
+        for (int i = 0; i < 10; i++) {
+            subject.record(300);
+        }
+        //the percentile is the upper bound of the bucket, which is at most ten percent off
+        int timeout = subject.currentTimeoutMillis();
+        assertTrue(timeout >= 350 && timeout <= 380);
+    }
+
+    @Test
+    public void clampedByCeiling() {
+        AdaptiveTimeout subject = new AdaptiveTimeout(new LatencyHistogram(60_000, 6), 99, 50, 100, 2000, 10);
+        for (int i = 0; i < 10; i++) {
+            subject.record(5000);
+        }
+        assertEquals(2000, subject.currentTimeoutMillis());
+    }
+}
@@ -0,0 +1,59 @@
+package aa.resilience;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkheadTest {
+
+    private final Bulkhead subject = new Bulkhead("sab", 1, 1);
+
+    @After
+    public void after() {
+        subject.shutdown();
+    }
+
+    @Test
+    public void rejectWhenFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = subject.submit(() -> await(latch));
+        CompletableFuture<Boolean> queued = subject.submit(() -> await(latch));
+        CompletableFuture<Boolean> rejected = subject.submit(() -> true);
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(1, subject.getRejectedCount());
+
+        latch.countDown();
+        assertTrue(running.get(1, TimeUnit.SECONDS));
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failuresAreNotCountedAsRejections() throws Exception {
+        CompletableFuture<Boolean> failed = subject.submit(() -> {
+            throw new IllegalArgumentException();
+        });
+        try {
+            failed.get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            //expected
+        }
+        assertFalse(failed.isCancelled());
+        assertEquals(0, subject.getRejectedCount());
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package aa.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static aa.resilience.CircuitBreaker.State.CLOSED;
+import static aa.resilience.CircuitBreaker.State.HALF_OPEN;
+import static aa.resilience.CircuitBreaker.State.OPEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final CircuitBreaker subject = new CircuitBreaker("sbs", 50, 4, 1000, 2, now::get);
+
+    @Test
+    public void opensOnFailureRate() {
+        call(true);
+        call(false);
+        call(true);
+        assertEquals(CLOSED, subject.getState());
+        call(false);
+        assertEquals(OPEN, subject.getState());
+        assertFalse(subject.tryAcquirePermission());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRate() {
+        call(false);
+        call(true);
+        call(true);
+        call(true);
+        call(true);
+        assertEquals(CLOSED, subject.getState());
+    }
+
+    @Test
+    public void halfOpenProbesClose() {
+        open();
+        now.addAndGet(1000);
+        assertTrue(subject.tryAcquirePermission());
+        assertEquals(HALF_OPEN, subject.getState());
+        assertTrue(subject.tryAcquirePermission());
+        //only two probes are allowed
+        assertFalse(subject.tryAcquirePermission());
+        subject.onSuccess();
+        subject.onSuccess();
+        assertEquals(CLOSED, subject.getState());
+        assertTrue(subject.tryAcquirePermission());
+    }
+
+    @Test
+    public void halfOpenProbeFailureReopens() {
+        open();
+        now.addAndGet(1000);
+        assertTrue(subject.tryAcquirePermission());
+        subject.onFailure();
+        assertEquals(OPEN, subject.getState());
+        assertFalse(subject.tryAcquirePermission());
+    }
+
+    @Test
+    public void cancelledProbeIsReleased() {
+        open();
+        now.addAndGet(1000);
+        assertTrue(subject.tryAcquirePermission());
+        assertTrue(subject.tryAcquirePermission());
+        assertFalse(subject.tryAcquirePermission());
+        subject.onIgnored();
+        assertEquals(HALF_OPEN, subject.getState());
+        assertTrue(subject.tryAcquirePermission());
+        subject.onSuccess();
+        subject.onSuccess();
+        assertEquals(CLOSED, subject.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(false);
+        }
+        assertEquals(OPEN, subject.getState());
+    }
+
+    private void call(boolean success) {
+        assertTrue(subject.tryAcquirePermission());
+        if (success) {
+            subject.onSuccess();
+        } else {
+            subject.onFailure();
+        }
+    }
+}
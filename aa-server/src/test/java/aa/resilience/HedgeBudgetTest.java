@@ -0,0 +1,35 @@
+package aa.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HedgeBudgetTest {
+
+    @Test
+    public void hedgesAreLimitedToPercentageOfRequests() {
+        HedgeBudget subject = new HedgeBudget(5, 1);
+        //the burst
+        assertTrue(subject.tryAcquire());
+        assertFalse(subject.tryAcquire());
+        for (int i = 0; i < 19; i++) {
+            subject.onRequest();
+        }
+        assertFalse(subject.tryAcquire());
+        subject.onRequest();
+        assertTrue(subject.tryAcquire());
+        assertFalse(subject.tryAcquire());
+    }
+
+    @Test
+    public void tokensAreCappedByBurst() {
+        HedgeBudget subject = new HedgeBudget(50, 2);
+        for (int i = 0; i < 100; i++) {
+            subject.onRequest();
+        }
+        assertTrue(subject.tryAcquire());
+        assertTrue(subject.tryAcquire());
+        assertFalse(subject.tryAcquire());
+    }
+}
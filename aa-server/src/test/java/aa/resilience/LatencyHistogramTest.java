@@ -0,0 +1,48 @@
+package aa.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void percentile() {
+        LatencyHistogram subject = new LatencyHistogram(60_000, 6, now::get);
+        assertEquals(-1, subject.percentile(99));
+
+        for (int i = 1; i <= 100; i++) {
+            subject.record(i * 10);
+        }
+        assertEquals(100, subject.count());
+        assertWithinTenPercent(500, subject.percentile(50));
+        assertWithinTenPercent(990, subject.percentile(99));
+        assertWithinTenPercent(1000, subject.percentile(100));
+    }
+
+    @Test
+    public void oldLatenciesAreForgotten() {
+        LatencyHistogram subject = new LatencyHistogram(60_000, 6, now::get);
+        subject.record(5000);
+        now.addAndGet(30_000);
+        subject.record(50);
+        assertEquals(2, subject.count());
+
+        now.addAndGet(35_000);
+        assertEquals(1, subject.count());
+        assertWithinTenPercent(50, subject.percentile(99));
+
+        now.addAndGet(60_000);
+        assertEquals(0, subject.count());
+    }
+
+    private void assertWithinTenPercent(long expected, long actual) {
+        assertTrue(String.format("Expected %s, but was %s", expected, actual),
+            actual >= expected && actual <= expected * 1.1);
+    }
+}
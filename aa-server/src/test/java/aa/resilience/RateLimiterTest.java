@@ -0,0 +1,25 @@
+package aa.resilience;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testAcquire() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(100);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            rateLimiter.acquire();
+        }
+        long duration = System.currentTimeMillis() - start;
+        //the first permit is free, the next ten take 10 ms each
+        assertTrue(String.valueOf(duration), duration >= 90 && duration < 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new RateLimiter(0);
+    }
+}
@@ -1,24 +1,42 @@
 package aa.service;
 
 import aa.aggregators.test.TestingAttributeAggregator;
+import aa.analytics.AnalyticsPublisher;
+import aa.cache.CacheEntry;
+import aa.cache.RefreshAhead;
 import aa.cache.SimpleInMemoryUserAttributeCache;
 import aa.config.AuthorityConfiguration;
+import aa.model.AggregationResult;
 import aa.model.ArpAggregationRequest;
 import aa.model.ArpValue;
 import aa.model.Attribute;
 import aa.model.AttributeAuthorityConfiguration;
 import aa.model.RequiredInputAttribute;
 import aa.model.UserAttribute;
+import aa.resilience.CircuitBreaker;
 import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static aa.aggregators.AttributeAggregator.EDU_PERSON_PRINCIPAL_NAME;
 import static aa.aggregators.AttributeAggregator.NAME_ID;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class AttributeAggregatorServiceTest {
 
@@ -58,16 +76,503 @@ public class AttributeAggregatorServiceTest {
         assertEquals(0, userAttributes.size());
     }
 
-    private List<UserAttribute> doAggregate(String arpValue) {
-        return doAggregate(arpValue, false);
+    @Test
+    public void aggregateBasedOnArpDeadline() throws Exception {
+        AttributeAuthorityConfiguration fast = attributeAuthorityConfiguration("fast");
+        AttributeAuthorityConfiguration slow = attributeAuthorityConfiguration("slow");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(fast, slow));
+
+        TestingAttributeAggregator slowAggregator = new TestingAttributeAggregator(slow) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                try {
+                    Thread.sleep(2500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            Arrays.asList(new TestingAttributeAggregator(fast), slowAggregator),
+            authorityConfiguration,
+            cache,
+            2000,
+            new FanOutExecutor(4, 4, false),
+            new AnalyticsPublisher(16, 0, 1000)
+        );
+
+        Map<String, List<ArpValue>> arpAttributes = new HashMap<>();
+        arpAttributes.put("name", Arrays.asList(new ArpValue("*", "fast"), new ArpValue("*", "slow")));
+        long start = System.currentTimeMillis();
+        AggregationResult result = subject.aggregateBasedOnArp(new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))), arpAttributes, 150L));
+
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(singletonList(new UserAttribute("name", singletonList("urn:x-surfnet:fast:test"), "fast")),
+            result.getUserAttributes());
+        assertEquals(Collections.singleton("slow"), result.getTimedOutSources());
     }
 
-    private List<UserAttribute> doAggregate(String arpValue, boolean throwError) {
+    @Test
+    public void aggregateBasedOnArpCancelledProbe() throws Exception {
+        AttributeAuthorityConfiguration fast = attributeAuthorityConfiguration("fast");
+        AttributeAuthorityConfiguration authority = attributeAuthorityConfiguration("test");
+        authority.setCircuitBreakerFailureRateThreshold(100);
+        authority.setCircuitBreakerWindowSize(1);
+        //the next call after the failure is the half-open probe
+        authority.setCircuitBreakerOpenMilliseconds(0);
+        authority.setCircuitBreakerHalfOpenProbes(1);
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(fast, authority));
+
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch probeStarted = new CountDownLatch(1);
+        CountDownLatch probeDone = new CountDownLatch(1);
+        TestingAttributeAggregator fastAggregator = new TestingAttributeAggregator(fast) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                try {
+                    probeStarted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        TestingAttributeAggregator aggregator = new TestingAttributeAggregator(authority) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                int call = calls.incrementAndGet();
+                if (call == 1) {
+                    throw new RuntimeException("oeps");
+                }
+                if (call == 2) {
+                    probeStarted.countDown();
+                    try {
+                        Thread.sleep(2500);
+                    } catch (InterruptedException e) {
+                        //like the RestTemplate does for an interrupted request
+                        throw new ResourceAccessException("Interrupted", new InterruptedIOException());
+                    } finally {
+                        probeDone.countDown();
+                    }
+                }
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            Arrays.asList(fastAggregator, aggregator),
+            authorityConfiguration,
+            cache
+        );
+        Map<String, List<ArpValue>> arpAttributes = new HashMap<>();
+        arpAttributes.put("name", Arrays.asList(new ArpValue("*", "fast"), new ArpValue("*", "test")));
+        ArpAggregationRequest request = new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))), arpAttributes);
+
+        //the failure opens the breaker
+        assertEquals(singleton("test"), subject.aggregateBasedOnArp(new ArpAggregationRequest(request.getUserAttributes(),
+            singletonMap("name", singletonList(new ArpValue("*", "test"))))).getFailedSources());
+
+        //the client goes away while the half-open probe is running
+        try {
+            subject.aggregateBasedOnArp(request, subject.compileArp(arpAttributes), (authorityId, userAttributes) -> {
+                throw new IllegalStateException("Client went away");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertTrue(probeDone.await(5, TimeUnit.SECONDS));
+
+        //the probe the caller gave up on is neither a failure nor holds on to the only probe, the breaker releases it
+        //just after the aggregator returned
+        UserAttribute expected = new UserAttribute("name", singletonList("urn:x-surfnet:test:test"), "test");
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (!subject.aggregateBasedOnArp(request).getUserAttributes().contains(expected)) {
+            assertTrue(System.currentTimeMillis() < giveUp);
+            Thread.sleep(5);
+        }
+        assertEquals(3, calls.get());
+        subject.shutdown();
+    }
+
+    @Test
+    public void aggregateBasedOnArpDeadlineOpensCircuitBreaker() throws Exception {
+        AttributeAuthorityConfiguration authority = attributeAuthorityConfiguration("test");
+        authority.setCircuitBreakerFailureRateThreshold(100);
+        authority.setCircuitBreakerWindowSize(2);
+        authority.setCircuitBreakerOpenMilliseconds(60_000);
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(authority));
+
+        AtomicInteger calls = new AtomicInteger();
+        TestingAttributeAggregator hanging = new TestingAttributeAggregator(authority) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                calls.incrementAndGet();
+                //a blocking socket read does not stop on an interrupt, only on its socket timeout
+                long timeoutAt = System.currentTimeMillis() + 300;
+                boolean interrupted = false;
+                for (long remaining = 300; remaining > 0; remaining = timeoutAt - System.currentTimeMillis()) {
+                    try {
+                        Thread.sleep(remaining);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new ResourceAccessException("Read timed out", new SocketTimeoutException());
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            singletonList(hanging),
+            authorityConfiguration,
+            cache
+        );
+        Map<String, List<ArpValue>> arpAttributes = singletonMap("name", singletonList(new ArpValue("*", "test")));
+
+        //the deadline is shorter than the socket timeout, different users so the calls are not coalesced
+        for (String urn : Arrays.asList("urn1", "urn2")) {
+            assertEquals(singleton("test"), subject.aggregateBasedOnArp(new ArpAggregationRequest(
+                singletonList(new UserAttribute(NAME_ID, singletonList(urn))), arpAttributes, 100L)).getTimedOutSources());
+        }
+
+        //the abandoned calls are timeouts of the authority
+        long timeout = System.currentTimeMillis() + 5000;
+        while (subject.circuitBreakerState("test") != CircuitBreaker.State.OPEN && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, subject.circuitBreakerState("test"));
+        assertEquals(singleton("test"), subject.aggregateBasedOnArp(new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn3"))), arpAttributes, 100L)).getFailedSources());
+        assertEquals(2, calls.get());
+        subject.shutdown();
+    }
+
+    @Test
+    public void aggregateBasedOnArpWithListener() throws Exception {
+        AttributeAuthorityConfiguration slow = attributeAuthorityConfiguration("slow");
+        AttributeAuthorityConfiguration fast = attributeAuthorityConfiguration("fast");
+        AttributeAuthorityConfiguration failing = attributeAuthorityConfiguration("failing");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(slow, fast, failing));
+
+        //the slow authority answers after the others have been streamed
+        CountDownLatch othersStreamed = new CountDownLatch(2);
+        TestingAttributeAggregator slowAggregator = new TestingAttributeAggregator(slow) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                try {
+                    othersStreamed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        TestingAttributeAggregator failingAggregator = new TestingAttributeAggregator(failing) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                throw new RuntimeException("oeps");
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            Arrays.asList(slowAggregator, new TestingAttributeAggregator(fast), failingAggregator),
+            authorityConfiguration,
+            cache
+        );
+
+        Map<String, List<ArpValue>> arpAttributes = new HashMap<>();
+        arpAttributes.put("name", Arrays.asList(new ArpValue("*", "slow"), new ArpValue("*", "fast"), new ArpValue("*", "failing")));
+        ArpAggregationRequest request = new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))), arpAttributes);
+
+        List<String> streamed = new ArrayList<>();
+        AggregationResult result = subject.aggregateBasedOnArp(request, subject.compileArp(arpAttributes),
+            (authorityId, userAttributes) -> {
+                streamed.add(authorityId + ":" + userAttributes.size());
+                if (!authorityId.equals("slow")) {
+                    othersStreamed.countDown();
+                }
+            });
+
+        //the failing authority answers with an empty list and is reported in the trailer
+        assertEquals("slow:1", streamed.get(streamed.size() - 1));
+        assertTrue(streamed.contains("fast:1"));
+        assertEquals(2, result.getUserAttributes().size());
+        assertEquals("slow", result.getUserAttributes().get(0).getSource());
+        assertEquals(Collections.singleton("failing"), result.getFailedSources());
+    }
+
+    @Test
+    public void aggregateBasedOnArpWithDependencies() {
+        Attribute crmId = new Attribute();
+        crmId.setName("crmId");
+        AttributeAuthorityConfiguration crm = new AttributeAuthorityConfiguration("crm", singletonList(crmId), ".*");
+        crm.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(NAME_ID)));
+        AttributeAuthorityConfiguration rest = attributeAuthorityConfiguration("rest");
+        rest.setRequiredInputAttributes(singletonList(new RequiredInputAttribute("crmId")));
+        rest.setDependsOn(singletonList("crm"));
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(rest, crm));
+
+        List<UserAttribute> restInput = new ArrayList<>();
+        TestingAttributeAggregator restAggregator = new TestingAttributeAggregator(rest) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                restInput.addAll(input);
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            Arrays.asList(restAggregator, new TestingAttributeAggregator(crm)),
+            authorityConfiguration,
+            cache
+        );
+
+        //only the output of rest is released, crm is queried because rest depends on it
+        AggregationResult result = subject.aggregateBasedOnArp(new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))),
+            singletonMap("name", singletonList(new ArpValue("*", "rest")))));
+
+        assertEquals(singletonList(new UserAttribute("name", singletonList("urn:x-surfnet:rest:test"), "rest")),
+            result.getUserAttributes());
+        assertTrue(restInput.contains(new UserAttribute("crmId", singletonList("urn:x-surfnet:crm:test"), "crm")));
+
+        //without the input of crm rest is skipped
+        restInput.clear();
+        result = subject.aggregateBasedOnArp(new ArpAggregationRequest(
+            singletonList(new UserAttribute("other", singletonList("urn"))),
+            singletonMap("name", singletonList(new ArpValue("*", "rest")))));
+        assertEquals(0, result.getUserAttributes().size());
+        assertTrue(restInput.isEmpty());
+    }
+
+    @Test
+    public void aggregateBasedOnArpStaleWhileRevalidate() throws Exception {
+        AttributeAuthorityConfiguration authority = attributeAuthorityConfiguration("test");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(authority));
+
+        AtomicInteger calls = new AtomicInteger();
+        TestingAttributeAggregator aggregator = new TestingAttributeAggregator(authority) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                return singletonList(new UserAttribute("name", singletonList("value" + calls.incrementAndGet()), "test"));
+            }
+        };
+        SimpleInMemoryUserAttributeCache staleCache = new SimpleInMemoryUserAttributeCache(100, 60_000, 60_000);
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            singletonList(aggregator),
+            authorityConfiguration,
+            staleCache
+        );
+        ArpAggregationRequest request = new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))),
+            singletonMap("name", singletonList(new ArpValue("*", "test"))));
+        String cacheKey = aggregator.cacheKey(request.getUserAttributes()).get();
+
+        assertEquals(singletonList("value1"), subject.aggregateBasedOnArp(request).getUserAttributes().get(0).getValues());
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!staleCache.inspect(cacheKey).get().isStale(System.currentTimeMillis())) {
+            assertTrue(System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+
+        //the stale value is returned and refreshed in the background
+        assertEquals(singletonList("value1"), subject.aggregateBasedOnArp(request).getUserAttributes().get(0).getValues());
+        while (!staleCache.inspect(cacheKey).get().getUserAttributes().get(0).getValues().contains("value2")) {
+            assertTrue(System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+        assertEquals(singletonList("value2"), subject.aggregateBasedOnArp(request).getUserAttributes().get(0).getValues());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void aggregateBasedOnArpNegativeCaching() {
+        AttributeAuthorityConfiguration empty = attributeAuthorityConfiguration("empty");
+        AttributeAuthorityConfiguration failing = attributeAuthorityConfiguration("failing");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(empty, failing));
+
+        AtomicInteger emptyCalls = new AtomicInteger();
+        AtomicInteger failingCalls = new AtomicInteger();
+        TestingAttributeAggregator emptyAggregator = new TestingAttributeAggregator(empty) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                emptyCalls.incrementAndGet();
+                return Collections.emptyList();
+            }
+        };
+        TestingAttributeAggregator failingAggregator = new TestingAttributeAggregator(failing) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                failingCalls.incrementAndGet();
+                throw new IllegalArgumentException("failing");
+            }
+        };
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            Arrays.asList(emptyAggregator, failingAggregator),
+            authorityConfiguration,
+            new SimpleInMemoryUserAttributeCache(60_000, 0, 60_000, 60_000)
+        );
+        Map<String, List<ArpValue>> arp = new HashMap<>();
+        arp.put("name", Arrays.asList(new ArpValue("*", "empty"), new ArpValue("*", "failing")));
+        ArpAggregationRequest request = new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))), arp);
+
+        subject.aggregateBasedOnArp(request);
+        AggregationResult result = subject.aggregateBasedOnArp(request);
+
+        assertTrue(result.getUserAttributes().isEmpty());
+        assertEquals(singleton("failing"), result.getFailedSources());
+        assertEquals(1, emptyCalls.get());
+        assertEquals(2, failingCalls.get());
+    }
+
+    @Test
+    public void aggregateBasedOnArpRefreshAhead() throws Exception {
+        AttributeAuthorityConfiguration hot = attributeAuthorityConfiguration("hot");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(hot));
+
+        AtomicInteger calls = new AtomicInteger();
+        TestingAttributeAggregator hotAggregator = new TestingAttributeAggregator(hot) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                calls.incrementAndGet();
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        //every hit is within the refresh-ahead window
+        RefreshAhead refreshAhead = new RefreshAhead(120_000, 2, 100, 60_000);
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            singletonList(hotAggregator),
+            authorityConfiguration,
+            new SimpleInMemoryUserAttributeCache(60_000, 60_000),
+            -1,
+            new FanOutExecutor(4, 4, false),
+            new AnalyticsPublisher(16, 0, 1000),
+            refreshAhead
+        );
+        ArpAggregationRequest request = new ArpAggregationRequest(
+            singletonList(new UserAttribute(NAME_ID, singletonList("urn"))),
+            singletonMap("name", singletonList(new ArpValue("*", "hot"))));
+
+        subject.aggregateBasedOnArp(request);
+        subject.aggregateBasedOnArp(request);
+        assertEquals(1, calls.get());
+
+        //the second hit makes the key hot
+        AggregationResult result = subject.aggregateBasedOnArp(request);
+        assertEquals(1, result.getUserAttributes().size());
+        long timeout = System.currentTimeMillis() + 5000;
+        while (calls.get() < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, calls.get());
+        refreshAhead.shutdown();
+    }
+
+    @Test
+    public void evictUser() throws Exception {
+        AttributeAuthorityConfiguration byNameId = attributeAuthorityConfiguration("byNameId");
+        AttributeAuthorityConfiguration byEppn = attributeAuthorityConfiguration("byEppn");
+        byEppn.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(EDU_PERSON_PRINCIPAL_NAME)));
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.asList(byNameId, byEppn));
+
+        Map<String, AtomicInteger> calls = new HashMap<>();
+        List<TestingAttributeAggregator> aggregators = new ArrayList<>();
+        for (AttributeAuthorityConfiguration configuration : Arrays.asList(byNameId, byEppn)) {
+            AtomicInteger counter = new AtomicInteger();
+            calls.put(configuration.getId(), counter);
+            aggregators.add(new TestingAttributeAggregator(configuration) {
+                @Override
+                public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                    counter.incrementAndGet();
+                    return super.aggregate(input, arpAttributes);
+                }
+            });
+        }
+        AttributeAggregatorService subject = new AttributeAggregatorService(
+            new ArrayList<>(aggregators),
+            authorityConfiguration,
+            new SimpleInMemoryUserAttributeCache(60_000, 60_000)
+        );
+        Map<String, List<ArpValue>> arp = singletonMap("name",
+            Arrays.asList(new ArpValue("*", "byNameId"), new ArpValue("*", "byEppn")));
+        ArpAggregationRequest request = new ArpAggregationRequest(Arrays.asList(
+            new UserAttribute(NAME_ID, singletonList("urn")),
+            new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("eppn"))), arp);
+
+        subject.aggregateBasedOnArp(request);
+        subject.evictNameId("urn");
+        subject.aggregateBasedOnArp(request);
+
+        assertEquals(2, calls.get("byNameId").get());
+        assertEquals(1, calls.get("byEppn").get());
+
+        Map<String, CacheEntry> entries = subject.inspectUser(
+            singletonList(new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("eppn"))), singletonList("byEppn"));
+        assertEquals(singleton("byEppn"), entries.keySet());
+        assertEquals(singletonList("urn:x-surfnet:byEppn:test"), entries.get("byEppn").getUserAttributes().get(0).getValues());
+
+        assertEquals(1, subject.evictAuthority("byEppn"));
+        assertEquals(singleton("byEppn"), subject.evictUser(
+            singletonList(new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList("eppn"))), Collections.emptyList()));
+        assertEquals(singleton("byNameId"), subject.evictUser(request.getUserAttributes(), singletonList("byNameId")));
+    }
+
+    @Test
+    public void shutdownStopsOwnExecutors() {
+        AttributeAuthorityConfiguration test = attributeAuthorityConfiguration("test");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(test));
+        AttributeAggregatorService subject =
+            new AttributeAggregatorService(singletonList(new TestingAttributeAggregator(test)), authorityConfiguration, cache);
+        long writers = analyticsWriters();
+
+        subject.shutdown();
+        assertEquals(writers - 1, analyticsWriters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evictUserUnknownAuthority() throws Exception {
+        AttributeAuthorityConfiguration test = attributeAuthorityConfiguration("test");
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(test));
+        new AttributeAggregatorService(singletonList(new TestingAttributeAggregator(test)), authorityConfiguration, cache)
+            .evictUser(singletonList(new UserAttribute(NAME_ID, singletonList("urn"))), singletonList("nope"));
+    }
+
+    private long analyticsWriters() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("analytics-writer") && thread.isAlive())
+            .count();
+    }
+
+    private AttributeAuthorityConfiguration attributeAuthorityConfiguration(String id) {
         Attribute attribute = new Attribute();
         attribute.setName("name");
         AttributeAuthorityConfiguration attributeAuthorityConfiguration =
-            new AttributeAuthorityConfiguration("test", singletonList(attribute), ".*");
+            new AttributeAuthorityConfiguration(id, singletonList(attribute), ".*");
         attributeAuthorityConfiguration.setRequiredInputAttributes(Collections.singletonList(new RequiredInputAttribute(NAME_ID)));
+        return attributeAuthorityConfiguration;
+    }
+
+    private List<UserAttribute> doAggregate(String arpValue) {
+        return doAggregate(arpValue, false);
+    }
+
+    private List<UserAttribute> doAggregate(String arpValue, boolean throwError) {
+        AttributeAuthorityConfiguration attributeAuthorityConfiguration = attributeAuthorityConfiguration("test");
 
         List<AttributeAuthorityConfiguration> authorities = singletonList(attributeAuthorityConfiguration);
         AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
@@ -91,7 +596,7 @@ public class AttributeAggregatorServiceTest {
         return subject.aggregateBasedOnArp(new ArpAggregationRequest(
             singletonList(new UserAttribute(NAME_ID, singletonList("urn"))),
             singletonMap("name", singletonList(new ArpValue(arpValue, "test")))
-        ));
+        )).getUserAttributes();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package aa.service;
+
+import aa.aggregators.AttributeAggregator;
+import aa.aggregators.test.TestingAttributeAggregator;
+import aa.model.AttributeAuthorityConfiguration;
+import aa.model.RequiredInputAttribute;
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static aa.aggregators.AttributeAggregator.EDU_PERSON_PRINCIPAL_NAME;
+import static aa.aggregators.AttributeAggregator.NAME_ID;
+import static java.util.Collections.singletonList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuthorityRegistryTest {
+
+    @Test
+    public void isSatisfiedBy() {
+        AuthorityRegistry registry = registry(
+            authority("both", NAME_ID, EDU_PERSON_PRINCIPAL_NAME),
+            authority("nameId", NAME_ID),
+            authority("eppn", EDU_PERSON_PRINCIPAL_NAME));
+
+        long[] mask = registry.inputMask(Arrays.asList(
+            new UserAttribute(NAME_ID, singletonList("urn")),
+            new UserAttribute(EDU_PERSON_PRINCIPAL_NAME, singletonList(" "))));
+
+        assertFalse(registry.isSatisfiedBy("both", mask));
+        assertTrue(registry.isSatisfiedBy("nameId", mask));
+        assertFalse(registry.isSatisfiedBy("eppn", mask));
+    }
+
+    @Test
+    public void isSatisfiedByWithMoreThanSixtyFourInputs() {
+        String[] names = IntStream.range(0, 100).mapToObj(i -> "input" + i).toArray(String[]::new);
+        AuthorityRegistry registry = registry(authority("many", names));
+
+        List<UserAttribute> input = Arrays.stream(names)
+            .map(name -> new UserAttribute(name, singletonList("value")))
+            .collect(toList());
+        assertTrue(registry.isSatisfiedBy("many", registry.inputMask(input)));
+        assertFalse(registry.isSatisfiedBy("many", registry.inputMask(input.subList(0, 99))));
+    }
+
+    @Test
+    public void planKeepsConfigurationOrderAndAddsDependencies() {
+        AuthorityRegistry registry = registry(
+            authority("first", NAME_ID),
+            dependsOn(authority("second", NAME_ID), "third"),
+            dependsOn(authority("third", NAME_ID), "fourth"),
+            authority("fourth", NAME_ID),
+            authority("unused", NAME_ID));
+
+        assertEquals(Arrays.asList("first", "second", "third", "fourth"),
+            ids(registry.plan(Arrays.asList("second", "first"))));
+        assertEquals(singletonList("fourth"), registry.dependencies("third"));
+        assertEquals(Collections.emptyList(), ids(registry.plan(singletonList("nope"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclicDependencies() {
+        registry(
+            dependsOn(authority("first", NAME_ID), "second"),
+            dependsOn(authority("second", NAME_ID), "third"),
+            dependsOn(authority("third", NAME_ID), "first"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDependency() {
+        registry(dependsOn(authority("first", NAME_ID), "nope"));
+    }
+
+    @Test
+    public void getById() {
+        AuthorityRegistry registry = registry(authority("nameId", NAME_ID));
+
+        assertTrue(registry.getById("nameId").isPresent());
+        assertFalse(registry.getById("nope").isPresent());
+    }
+
+    private AuthorityRegistry registry(AttributeAuthorityConfiguration... configurations) {
+        Map<String, AttributeAggregator> aggregators = Arrays.stream(configurations)
+            .map(TestingAttributeAggregator::new)
+            .collect(Collectors.toMap(AttributeAggregator::getAttributeAuthorityId, identity()));
+        return new AuthorityRegistry(Arrays.asList(configurations), aggregators);
+    }
+
+    private AttributeAuthorityConfiguration authority(String id, String... requiredInputs) {
+        AttributeAuthorityConfiguration configuration = new AttributeAuthorityConfiguration(id);
+        configuration.setRequiredInputAttributes(Arrays.stream(requiredInputs)
+            .map(RequiredInputAttribute::new)
+            .collect(toList()));
+        return configuration;
+    }
+
+    private AttributeAuthorityConfiguration dependsOn(AttributeAuthorityConfiguration configuration, String... ids) {
+        configuration.setDependsOn(Arrays.asList(ids));
+        return configuration;
+    }
+
+    private List<String> ids(List<AttributeAggregator> aggregators) {
+        return aggregators.stream().map(AttributeAggregator::getAttributeAuthorityId).collect(toList());
+    }
+}
@@ -0,0 +1,137 @@
+package aa.service;
+
+import aa.aggregators.test.TestingAttributeAggregator;
+import aa.cache.SimpleInMemoryUserAttributeCache;
+import aa.config.AuthorityConfiguration;
+import aa.model.ArpValue;
+import aa.model.Attribute;
+import aa.model.AttributeAuthorityConfiguration;
+import aa.model.BatchAggregationRequest;
+import aa.model.BatchAggregationResult;
+import aa.model.BatchAggregationUser;
+import aa.model.RequiredInputAttribute;
+import aa.model.UserAttribute;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static aa.aggregators.AttributeAggregator.NAME_ID;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchAggregationServiceTest {
+
+    @Test
+    public void aggregate() throws InterruptedException {
+        AttributeAuthorityConfiguration authority = authority();
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(authority));
+
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        TestingAttributeAggregator aggregator = new TestingAttributeAggregator(authority) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        AttributeAggregatorService attributeAggregatorService = new AttributeAggregatorService(
+            singletonList(aggregator), authorityConfiguration, new SimpleInMemoryUserAttributeCache(-1, 1000));
+        BatchAggregationService subject = new BatchAggregationService(attributeAggregatorService, 3, 10);
+
+        List<BatchAggregationUser> users = IntStream.range(0, 20)
+            .mapToObj(i -> new BatchAggregationUser("user" + i, singletonList(new UserAttribute(NAME_ID, singletonList("urn" + i)))))
+            .collect(Collectors.toList());
+        List<BatchAggregationResult> results = new ArrayList<>();
+        subject.aggregate(new BatchAggregationRequest(users, singletonMap("name", singletonList(new ArpValue("*", "test"))), null),
+            results::add);
+        subject.shutdown();
+
+        assertEquals(20, results.size());
+        Set<String> ids = results.stream().map(BatchAggregationResult::getId).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(20, ids.size());
+        results.forEach(result -> {
+            assertFalse(result.isFailed());
+            assertEquals(1, result.getUserAttributes().size());
+            assertTrue(result.getFailedSources().isEmpty());
+        });
+        assertTrue(maxConcurrent.get() <= 3);
+    }
+
+    @Test
+    public void aggregateCancelsWhenConsumerFails() throws InterruptedException {
+        AttributeAuthorityConfiguration authority = authority();
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(singletonList(authority));
+
+        CountDownLatch interrupted = new CountDownLatch(2);
+        TestingAttributeAggregator aggregator = new TestingAttributeAggregator(authority) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                if (input.get(0).getValues().contains("urn0")) {
+                    throw new IllegalArgumentException("oeps");
+                }
+                try {
+                    new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+        AttributeAggregatorService attributeAggregatorService = new AttributeAggregatorService(
+            singletonList(aggregator), authorityConfiguration, new SimpleInMemoryUserAttributeCache(-1, 1000));
+        BatchAggregationService subject = new BatchAggregationService(attributeAggregatorService, 3, 10);
+
+        List<BatchAggregationUser> users = IntStream.range(0, 3)
+            .mapToObj(i -> new BatchAggregationUser("user" + i, singletonList(new UserAttribute(NAME_ID, singletonList("urn" + i)))))
+            .collect(Collectors.toList());
+        List<BatchAggregationResult> results = new ArrayList<>();
+        try {
+            subject.aggregate(new BatchAggregationRequest(users, singletonMap("name", singletonList(new ArpValue("*", "test"))), null),
+                result -> {
+                    results.add(result);
+                    throw new IllegalStateException("client went away");
+                });
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        subject.shutdown();
+        attributeAggregatorService.shutdown();
+
+        assertEquals(1, results.size());
+        assertEquals(singleton("test"), results.get(0).getFailedSources());
+    }
+
+    private AttributeAuthorityConfiguration authority() {
+        Attribute attribute = new Attribute();
+        attribute.setName("name");
+        AttributeAuthorityConfiguration authority = new AttributeAuthorityConfiguration("test", singletonList(attribute), ".*");
+        authority.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(NAME_ID)));
+        return authority;
+    }
+}
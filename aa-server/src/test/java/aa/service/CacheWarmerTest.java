@@ -0,0 +1,107 @@
+package aa.service;
+
+import aa.aggregators.test.TestingAttributeAggregator;
+import aa.cache.SimpleInMemoryUserAttributeCache;
+import aa.config.AuthorityConfiguration;
+import aa.model.ArpAggregationRequest;
+import aa.model.ArpValue;
+import aa.model.Attribute;
+import aa.model.AttributeAuthorityConfiguration;
+import aa.model.BatchAggregationUser;
+import aa.model.CacheWarmRequest;
+import aa.model.RequiredInputAttribute;
+import aa.model.UserAttribute;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static aa.aggregators.AttributeAggregator.NAME_ID;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+
+public class CacheWarmerTest {
+
+    private Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private SimpleInMemoryUserAttributeCache cache = new SimpleInMemoryUserAttributeCache(60_000, 60_000);
+
+    private AttributeAggregatorService attributeAggregatorService = new AttributeAggregatorService(
+        Arrays.asList(aggregator("first"), aggregator("second")), authorityConfiguration("first", "second"), cache);
+
+    private CacheWarmer subject = new CacheWarmer(attributeAggregatorService, 1000);
+
+    private List<BatchAggregationUser> users = IntStream.range(0, 10)
+        .mapToObj(i -> new BatchAggregationUser("user" + i, singletonList(new UserAttribute(NAME_ID, singletonList("urn" + i)))))
+        .collect(Collectors.toList());
+
+    @After
+    public void after() {
+        subject.shutdown();
+        cache.shutdown();
+    }
+
+    @Test
+    public void warm() {
+        Map<String, Integer> result = subject.warm(new CacheWarmRequest(users, null)).join();
+
+        Map<String, Integer> expected = new TreeMap<>();
+        expected.put("first", 10);
+        expected.put("second", 10);
+        assertEquals(expected, result);
+        assertEquals(10, calls.get("first").get());
+        assertEquals(10, calls.get("second").get());
+
+        //the users are now served from the cache
+        attributeAggregatorService.aggregateBasedOnArp(new ArpAggregationRequest(users.get(0).getUserAttributes(),
+            singletonMap("name", Arrays.asList(new ArpValue("*", "first"), new ArpValue("*", "second")))));
+        assertEquals(10, calls.get("first").get());
+        assertEquals(10, calls.get("second").get());
+    }
+
+    @Test
+    public void warmOneAuthority() {
+        Map<String, Integer> result = subject.warm(new CacheWarmRequest(users, singletonList("second"))).join();
+
+        assertEquals(singletonMap("second", 10), result);
+        assertEquals(0, calls.get("first").get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void warmUnknownAuthority() {
+        subject.warm(new CacheWarmRequest(users, singletonList("nope")));
+    }
+
+    private TestingAttributeAggregator aggregator(String id) {
+        AtomicInteger counter = calls.computeIfAbsent(id, key -> new AtomicInteger());
+        return new TestingAttributeAggregator(authority(id)) {
+            @Override
+            public List<UserAttribute> aggregate(List<UserAttribute> input, Map<String, List<ArpValue>> arpAttributes) {
+                counter.incrementAndGet();
+                return super.aggregate(input, arpAttributes);
+            }
+        };
+    }
+
+    private AuthorityConfiguration authorityConfiguration(String... ids) {
+        AuthorityConfiguration authorityConfiguration = new AuthorityConfiguration();
+        authorityConfiguration.setAuthorities(Arrays.stream(ids).map(this::authority).collect(Collectors.toList()));
+        return authorityConfiguration;
+    }
+
+    private AttributeAuthorityConfiguration authority(String id) {
+        Attribute attribute = new Attribute();
+        attribute.setName("name");
+        AttributeAuthorityConfiguration authority = new AttributeAuthorityConfiguration(id, singletonList(attribute), ".*");
+        authority.setRequiredInputAttributes(singletonList(new RequiredInputAttribute(NAME_ID)));
+        return authority;
+    }
+}
@@ -0,0 +1,81 @@
+package aa.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FanOutExecutorTest {
+
+    private final FanOutExecutor subject = new FanOutExecutor(1, 1, false);
+
+    @After
+    public void after() {
+        subject.shutdown();
+    }
+
+    @Test
+    public void submit() throws Exception {
+        assertEquals("value", subject.submit(() -> "value").get(1, TimeUnit.SECONDS));
+        assertTrue(subject.submit(() -> Thread.currentThread().getName()).get().startsWith("aggregator-io-"));
+    }
+
+    @Test
+    public void rejectWhenSaturated() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        subject.submit(() -> await(latch));
+        subject.submit(() -> await(latch));
+        CompletableFuture<Boolean> rejected = subject.submit(() -> true);
+        try {
+            rejected.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        } finally {
+            latch.countDown();
+        }
+        assertTrue(rejected.isCompletedExceptionally());
+    }
+
+    @Test
+    public void cancelInterrupts() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Boolean> future = subject.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return true;
+        });
+        started.await();
+        future.cancel(true);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void virtualThreadsFallback() throws Exception {
+        FanOutExecutor executor = new FanOutExecutor(1, 1, true);
+        try {
+            assertEquals("value", executor.submit(() -> "value").get(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
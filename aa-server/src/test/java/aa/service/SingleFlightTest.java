@@ -0,0 +1,137 @@
+package aa.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String> subject = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(5);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "value";
+            }), executor));
+        }
+        //wait until the leader is in flight and the others joined it
+        while (calls.get() == 0 || subject.waitingCount() < 4) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (CompletableFuture<String> future : futures) {
+            assertEquals("value", future.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, subject.inFlightCount());
+    }
+
+    @Test
+    public void sequentialCallsAreNotShared() {
+        AtomicInteger calls = new AtomicInteger();
+        subject.execute("key", () -> "value" + calls.incrementAndGet());
+        assertEquals("value2", subject.execute("key", () -> "value" + calls.incrementAndGet()));
+    }
+
+    @Test
+    public void failureIsPropagatedToAllCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+            await(release);
+            throw new IllegalArgumentException("oeps");
+        }), executor);
+        while (subject.inFlightCount() == 0) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> "value"), executor);
+        while (subject.waitingCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        assertFailed(leader);
+        assertFailed(follower);
+    }
+
+    @Test
+    public void errorIsPropagatedToAllCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+            await(release);
+            throw new StackOverflowError();
+        }), executor);
+        while (subject.inFlightCount() == 0) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> "value"), executor);
+        while (subject.waitingCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        assertFailed(leader, StackOverflowError.class);
+        assertFailed(follower, StackOverflowError.class);
+        assertEquals(0, subject.inFlightCount());
+    }
+
+    @Test
+    public void followerStopsWaitingAtItsDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+            await(release);
+            return "value";
+        }), executor);
+        while (subject.inFlightCount() == 0) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() ->
+            subject.execute("key", System.currentTimeMillis() + 50, () -> "other"), executor);
+        assertFailed(follower, IllegalStateException.class);
+        release.countDown();
+        assertEquals("value", leader.get(1, TimeUnit.SECONDS));
+    }
+
+    private void assertFailed(CompletableFuture<String> future) throws Exception {
+        assertFailed(future, IllegalArgumentException.class);
+    }
+
+    private void assertFailed(CompletableFuture<String> future, Class<? extends Throwable> expected) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+            return;
+        }
+        throw new AssertionError("Expected failure");
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,2 +1,3 @@
 DELETE FROM `accounts`;
-DELETE FROM `pseudo_emails`;
\ No newline at end of file
+DELETE FROM `pseudo_emails`;
+DELETE FROM `aggregate_cache`;
\ No newline at end of file